@@ -2,6 +2,7 @@ package cn.humorchen.localcache;
 
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import cn.humorchen.localcache.enums.CopyResultStrategy;
+import cn.humorchen.localcache.enums.ValueStrengthEnum;
 
 import java.lang.annotation.*;
 import java.util.concurrent.TimeUnit;
@@ -19,7 +20,7 @@ import java.util.concurrent.TimeUnit;
  * 异步自更新缓存示范
  * <code>@LocalCache(expireAfterWrite = 10,refreshAfterWrite = 3)<code/> <br>
  * 写入的缓存10秒过期，3秒后若有请求访问该key，这次直接返回缓存内的值，然后触发异步加载这个key（key对象里提前保存好了方法所有参数，调用方法执行） <br>
- * 是否为相同key的自定义判定可以通过覆写方法参数对象类的equals方法和hash方法实现，判定规则为equals方法为true或json序列化结果相同，优先equals <br>
+ * 是否为相同key的判定规则为参数内容指纹（Murmur3 128位）相同，参数对象自身的equals、hashCode方法不参与判定；需要自定义判定时让参数类实现ILocalCacheEquals接口并覆写hashCode与之保持一致，该参数再由接口判定（只对方法参数本身生效） <br>
  **/
 @Retention(RetentionPolicy.RUNTIME)
 @Target(value = ElementType.METHOD)
@@ -75,7 +76,7 @@ public @interface LocalCache {
 
     /**
      * key最大长度
-     * 所有方法参数的json长度和，大于则不加入缓存
+     * 所有方法参数的估算长度和（约等于json长度），大于则不加入缓存
      * 0 无限制
      * @return
      */
@@ -94,7 +95,8 @@ public @interface LocalCache {
      * 单位：字节
      * java内 1 字符等于 2 字节
      * 默认空字符串代表 无限制
-     * 示范值 10MB
+     * 配置后（或全局配置了oneCacheUsedMemoryMaxSize）写入时由caffeine按估算字节数的权重直接淘汰
+     * 示范值 10MB，也可按最大堆内存的百分比配置，例如 5%
      * @see cn.hutool.core.io.unit.DataSize
      *
      * @return
@@ -118,6 +120,36 @@ public @interface LocalCache {
      */
     boolean skipGlobalMemoryLimit() default false;
 
+    /**
+     * 全局内存限制下的优先级（权重）
+     * 超出全局内存限制时按优先级分配每个缓存的公平份额，优先级越高份额越大，优先从超出份额的缓存回收
+     * 默认 1，必须大于0
+     *
+     * @return
+     */
+    int priority() default 1;
+
+    /**
+     * 全局内存限制下保留的最小内存
+     * 全局回收时不会把该缓存的内存占用回收到低于该值（单个缓存的内存限制不受影响）
+     * 默认空字符串代表 不保留
+     * 示范值 1MB 或 1%
+     *
+     * @return
+     * @see cn.hutool.core.io.unit.DataSize
+     */
+    String minReservedMemory() default "";
+
+    /**
+     * 缓存值的引用强度
+     * 默认软引用，内存不足时被gc回收；被回收的值由引用回收线程立即从缓存移除
+     * 小而热的缓存可使用强引用，省去引用对象和gc处理引用的开销
+     *
+     * @return
+     * @see ValueStrengthEnum
+     */
+    ValueStrengthEnum valueStrength() default ValueStrengthEnum.SOFT;
+
     /**
      * 是否拷贝返回值
      * 用于解决返回值是引用类型，缓存值被修改的问题
@@ -129,4 +161,95 @@ public @interface LocalCache {
      * @see CopyResultStrategy
      */
     CopyResultStrategy copyResultStrategy() default CopyResultStrategy.NONE;
+
+    /**
+     * 是否合并并发加载（single flight）
+     * 同一个key缓存未命中时，并发的请求只有一个执行被代理方法，其他请求等待并共享它的结果，避免热点key过期时缓存击穿
+     * 自动刷新缓存（refreshAfterWrite > 0）默认开启
+     *
+     * @return
+     */
+    boolean singleFlight() default false;
+
+    /**
+     * 合并加载时等待其他线程加载结果的最长毫秒数
+     * 超时后当前线程自行执行被代理方法
+     * -1 代表最多等待缓存有效时间（expireAfterWrite）
+     *
+     * @return
+     */
+    long singleFlightWaitMillis() default -1;
+
+    /**
+     * 是否缓存null返回值（负缓存）
+     * 开启后方法返回null也会写入缓存（共享的null占位对象，不计入内存统计），避免查询不存在的数据时每次都穿透到被代理方法
+     *
+     * @return
+     */
+    boolean cacheNull() default false;
+
+    /**
+     * null返回值（以及开启cacheEmpty后的空返回值）的缓存有效时间，单位同timeUnit
+     * -1 代表与expireAfterWrite一致
+     *
+     * @return
+     */
+    int nullExpireAfterWrite() default -1;
+
+    /**
+     * 是否把空集合、空Map、空数组、Optional.empty()当作null返回值处理
+     * 开启后空返回值使用nullExpireAfterWrite作为缓存有效时间，且不计入内存统计
+     *
+     * @return
+     */
+    boolean cacheEmpty() default false;
+
+    /**
+     * 过期后继续返回旧值并异步刷新的时间窗口（stale-while-revalidate），单位同timeUnit
+     * 缓存值过期后的这段时间内被访问，直接返回旧值，同时在缓存线程池异步执行被代理方法刷新（同一个key只刷新一次）
+     * 0 代表不开启，仅对同步返回值的方法生效
+     *
+     * @return
+     */
+    int staleWhileRevalidateFor() default 0;
+
+    /**
+     * 过期后加载报错时返回旧值的时间窗口（stale-if-error），单位同timeUnit
+     * 缓存值过期后的这段时间内重新加载时被代理方法抛出异常，返回旧值而不是抛出异常
+     * 0 代表不开启，仅对同步返回值的方法生效
+     *
+     * @return
+     */
+    int staleIfErrorFor() default 0;
+
+    /**
+     * 批量方法名（同一个类中，只有一个Collection/List/Set参数，返回 Map&lt;id, 值&gt; 或 List&lt;值&gt;）
+     * 配置后单个参数的方法并发的缓存未命中会在 batchWindowMillis 内收集起来合并成一次批量方法调用
+     * 空代表不开启，仅对同步返回值的方法生效
+     *
+     * @return
+     * @see LocalCacheMicroBatcher
+     */
+    String batchLoader() default "";
+
+    /**
+     * 合并批量加载的收集时间窗口，单位毫秒
+     *
+     * @return
+     */
+    long batchWindowMillis() default 2;
+
+    /**
+     * 合并批量加载一批最多的id数，攒够后立即加载
+     *
+     * @return
+     */
+    int batchMaxSize() default 100;
+
+    /**
+     * 批量方法返回值为List时，从元素中取出id的属性名
+     *
+     * @return
+     */
+    String batchKeyProperty() default "";
 }
@@ -0,0 +1,100 @@
+package cn.humorchen.localcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/8
+ * description: 异步日志输出
+ * 调用线程只把日志模板和参数放进有界环形缓冲区，格式化（含参数转json）和输出由后台守护线程完成
+ * 缓冲区满时直接丢弃并计数，不阻塞业务线程；参数在输出时才取值，可变对象打印的是输出时的状态
+ **/
+public class LocalCacheAsyncLogSink {
+    private static final Logger log = LoggerFactory.getLogger(LocalCacheLogger.class);
+    /**
+     * 日志缓冲区
+     */
+    private final BlockingQueue<LogEvent> buffer;
+    /**
+     * 被丢弃的日志条数
+     */
+    private final LongAdder droppedCount = new LongAdder();
+    /**
+     * 输出线程
+     */
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public LocalCacheAsyncLogSink(int capacity) {
+        this.buffer = new ArrayBlockingQueue<>(Math.max(capacity, 16));
+        this.worker = new Thread(this::drain, "【本地缓存】async-log");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 放入一条debug日志
+     *
+     * @param content
+     * @param args
+     */
+    public void offer(String content, Object[] args) {
+        if (!buffer.offer(new LogEvent(content, args))) {
+            droppedCount.increment();
+        }
+    }
+
+    /**
+     * 被丢弃的日志条数
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * 停止输出线程，剩余日志输出完后退出
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * 循环取出日志并输出
+     */
+    private void drain() {
+        while (running || !buffer.isEmpty()) {
+            try {
+                LogEvent event = running ? buffer.poll(1, TimeUnit.SECONDS) : buffer.poll();
+                if (event != null) {
+                    log.debug(LocalCacheLogger.logCutoff(LocalCacheLogger.log2String(event.content, event.args)));
+                }
+            } catch (InterruptedException e) {
+                // shutdown 唤醒，继续输出剩余日志
+            } catch (Throwable e) {
+                log.error("本地缓存 异步日志输出报错", e);
+            }
+        }
+    }
+
+    /**
+     * 日志事件
+     */
+    private static class LogEvent {
+        private final String content;
+        private final Object[] args;
+
+        private LogEvent(String content, Object[] args) {
+            this.content = content;
+            this.args = args;
+        }
+    }
+}
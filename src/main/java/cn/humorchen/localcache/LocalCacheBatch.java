@@ -0,0 +1,43 @@
+package cn.humorchen.localcache;
+
+import java.lang.annotation.*;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/10
+ * description: 批量查询方法的按元素缓存注解 <br>
+ * 适用于参数为id集合、返回值为 Map&lt;id, 值&gt; 或 List&lt;值&gt; 的方法，每个id单独缓存 <br>
+ * 调用时已缓存的id直接取缓存，未缓存的id合并成一次调用被代理方法（caffeine getAll 批量加载），结果按id合并后返回 <br>
+ * 示范 <br>
+ * <code>@LocalCacheBatch(cache = @LocalCache(expireAfterWrite = 60))<code/> Map&lt;Long, User&gt; getUsers(List&lt;Long&gt; ids) <br>
+ * <code>@LocalCacheBatch(keyProperty = "id", cache = @LocalCache(expireAfterWrite = 60))<code/> List&lt;User&gt; listUsers(List&lt;Long&gt; ids) <br>
+ * 其他参数会参与每个元素的缓存key；返回值里没有的id不会缓存（开启cacheNull后缓存为null） <br>
+ * 批量缓存不支持异步返回值和过期旧值窗口（staleWhileRevalidateFor、staleIfErrorFor）
+ **/
+@Retention(RetentionPolicy.RUNTIME)
+@Target(value = ElementType.METHOD)
+@Inherited
+@Documented
+public @interface LocalCacheBatch {
+    /**
+     * id集合参数的下标（从0开始），参数类型需为Collection
+     *
+     * @return
+     */
+    int argIndex() default 0;
+
+    /**
+     * 返回值为集合时，从元素中取出id的属性名（支持Bean和Map），返回值为Map时不用填写
+     * 参数中的id找不到时按字符串形式再匹配一次
+     *
+     * @return
+     */
+    String keyProperty() default "";
+
+    /**
+     * 缓存配置，与 @LocalCache 一致
+     *
+     * @return
+     */
+    LocalCache cache() default @LocalCache;
+}
@@ -0,0 +1,68 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import com.github.benmanes.caffeine.cache.Weigher;
+import lombok.Getter;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/12
+ * description: 方法缓存按内存占用计算的权重
+ * 配置了内存限制（注解usedMemoryMaxSize、全局oneCacheUsedMemoryMaxSize取小）的缓存使用caffeine maximumWeight，写入时由W-TinyLFU直接淘汰，定时清理只做兜底
+ * 单个值的权重为估算字节数，且不小于 限制/最大容量，使缓存值个数仍不超过maxCapacity
+ **/
+@Getter
+public class LocalCacheByteWeigher implements Weigher<LocalCacheKey, LocalCacheValue> {
+    /**
+     * 最大权重（字节）
+     */
+    private final long maximumWeight;
+    /**
+     * 单个值的最小权重
+     */
+    private final int minWeight;
+
+    public LocalCacheByteWeigher(long maximumWeight, int maxCapacity) {
+        this.maximumWeight = maximumWeight;
+        this.minWeight = (int) Math.min(Math.max(maximumWeight / Math.max(maxCapacity, 1), 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * 根据注解和全局配置创建，未配置内存限制的返回null（使用maximumSize即可）
+     *
+     * @param localCache
+     * @param oneCacheUsedMemoryMaxSizeByte 全局单个缓存内存限制，可为空
+     * @return
+     */
+    public static LocalCacheByteWeigher of(LocalCache localCache, Long oneCacheUsedMemoryMaxSizeByte) {
+        if (localCache == null) {
+            return null;
+        }
+        long limit = usedMemoryMaxSizeByte(localCache, oneCacheUsedMemoryMaxSizeByte);
+        return limit > 0 ? new LocalCacheByteWeigher(limit, localCache.maxCapacity()) : null;
+    }
+
+    /**
+     * 缓存的内存限制（字节），注解和全局配置取小，0 无限制
+     *
+     * @param localCache
+     * @param oneCacheUsedMemoryMaxSizeByte
+     * @return
+     */
+    public static long usedMemoryMaxSizeByte(LocalCache localCache, Long oneCacheUsedMemoryMaxSizeByte) {
+        long usedMemoryMaxSize = Math.max(LocalCacheSizeUtil.parseByteSize(localCache.usedMemoryMaxSize()), 0);
+        long oneCacheUsedMemoryMaxSize = oneCacheUsedMemoryMaxSizeByte != null ? Math.max(oneCacheUsedMemoryMaxSizeByte, 0) : 0;
+        if (usedMemoryMaxSize > 0 && oneCacheUsedMemoryMaxSize > 0) {
+            return Math.min(usedMemoryMaxSize, oneCacheUsedMemoryMaxSize);
+        }
+        return Math.max(usedMemoryMaxSize, oneCacheUsedMemoryMaxSize);
+    }
+
+    @Override
+    public int weigh(LocalCacheKey key, LocalCacheValue value) {
+        // 异步缓存的结果为空时value为null
+        long byteSize = LocalCacheSizeUtil.getEntryByteSize(value);
+        return (int) Math.min(Math.max(byteSize, minWeight), Integer.MAX_VALUE);
+    }
+}
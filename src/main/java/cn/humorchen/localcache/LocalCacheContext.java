@@ -3,11 +3,13 @@ package cn.humorchen.localcache;
 import cn.hutool.core.util.StrUtil;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.collect.MapMaker;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author  humorchen
@@ -25,8 +27,21 @@ public class LocalCacheContext {
     protected static final Map<String, LocalCache> LOCAL_CACHE_MAP = new ConcurrentHashMap<>();
     /**
      * 获取名字
+     * 并发的identity map（弱引用key按引用比较），缓存会被多个线程同时创建注册
      */
-    protected static final Map<Cache, String> CACHE_NAME_MAP = new HashMap<>();
+    protected static final Map<Cache, String> CACHE_NAME_MAP = new MapMaker().weakKeys().makeMap();
+    /**
+     * 方法缓存执行计划
+     */
+    private static final Map<String, MethodCachePlan> METHOD_CACHE_PLAN_MAP = new ConcurrentHashMap<>();
+    /**
+     * 方法名驻留为整数id
+     */
+    private static final Map<String, Integer> METHOD_ID_MAP = new ConcurrentHashMap<>();
+    /**
+     * 方法id生成器
+     */
+    private static final AtomicInteger METHOD_ID_GENERATOR = new AtomicInteger(0);
 
     /**
      * 把缓存注册到监控器监控
@@ -36,7 +51,8 @@ public class LocalCacheContext {
      */
 
     public static void register(String cacheName, Cache cache, LocalCache localCache) {
-        if (CACHE_MAP.containsKey(cacheName) && cache != CACHE_MAP.get(cacheName)) {
+        Cache existing = CACHE_MAP.putIfAbsent(cacheName, cache);
+        if (existing != null && existing != cache) {
             throw new IllegalArgumentException("本地缓存-缓存名重复：" + cacheName);
         }
         putCache(cacheName, cache, localCache);
@@ -94,6 +110,42 @@ public class LocalCacheContext {
         return CACHE_NAME_MAP.get(cache);
     }
 
+    /**
+     * 获取方法名驻留的整数id，同一个方法名始终返回同一个id
+     *
+     * @param methodKey
+     * @return
+     */
+    public static int getMethodId(String methodKey) {
+        if (methodKey == null) {
+            return 0;
+        }
+        Integer methodId = METHOD_ID_MAP.get(methodKey);
+        if (methodId == null) {
+            methodId = METHOD_ID_MAP.computeIfAbsent(methodKey, k -> METHOD_ID_GENERATOR.incrementAndGet());
+        }
+        return methodId;
+    }
+
+    /**
+     * 注册方法缓存执行计划
+     *
+     * @param plan
+     */
+    public static void registerMethodCachePlan(MethodCachePlan plan) {
+        METHOD_CACHE_PLAN_MAP.put(plan.getMethodKey(), plan);
+    }
+
+    /**
+     * 获取方法缓存执行计划
+     *
+     * @param cacheName
+     * @return 非方法缓存返回null
+     */
+    public static MethodCachePlan getMethodCachePlan(String cacheName) {
+        return cacheName != null ? METHOD_CACHE_PLAN_MAP.get(cacheName) : null;
+    }
+
     /**
      * 获取方法缓存的注解
      *
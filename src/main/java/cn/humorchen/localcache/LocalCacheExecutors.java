@@ -0,0 +1,337 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
+import cn.humorchen.localcache.enums.ExecutorTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/22
+ * description: 本地缓存共用线程池的注册表
+ * 按用途分为刷新（加载、刷新、caffeine内部任务）、清理（内存回收）、写入后处理、合并批量加载、启动初始化五个有名字的共享线程池，所有缓存共用，不再每个缓存各建一个
+ * 合并批量加载单独一个线程池：刷新线程池里的任务会等待批量加载的结果，批量加载放在同一个线程池里线程全在等待时会饿死
+ * 刷新任务按缓存设置舱壁（同时执行的刷新任务数上限），一个缓存的刷新风暴不会占满线程池；线程池或舱壁满时跳过本次刷新，继续使用旧值
+ * 刷新线程池可配置为虚拟线程（local.cache.executor=virtual，JDK21及以上），每个任务一个虚拟线程，并发只由舱壁限制
+ * 线程池的排队数、活跃线程数、拒绝数由监控打印
+ **/
+@Slf4j
+public class LocalCacheExecutors {
+    /**
+     * 刷新线程池
+     */
+    public static final String REFRESH = "refresh";
+    /**
+     * 清理线程池
+     */
+    public static final String CLEANUP = "cleanup";
+    /**
+     * 写入后处理线程池
+     */
+    public static final String POST_PUT = "post-put";
+    /**
+     * 合并批量加载线程池
+     */
+    public static final String MICRO_BATCH = "micro-batch";
+    /**
+     * 启动初始化线程池
+     */
+    public static final String STARTUP = "startup";
+    /**
+     * 线程池满时的拒绝异常，共用一个不带堆栈的实例，拒绝时不创建对象
+     */
+    private static final RejectedExecutionException REJECTED = new PoolFullException();
+    /**
+     * 线程池
+     */
+    private static final Map<String, ExecutorService> POOL_MAP = new ConcurrentHashMap<>();
+    /**
+     * 每个线程池的拒绝数
+     */
+    private static final Map<String, LongAdder> REJECTED_COUNT_MAP = new ConcurrentHashMap<>();
+    /**
+     * 每个缓存的刷新舱壁
+     */
+    private static final Map<String, Semaphore> BULKHEAD_MAP = new ConcurrentHashMap<>();
+    /**
+     * 因线程池或舱壁满跳过的刷新次数
+     */
+    private static final LongAdder SKIPPED_REFRESH_COUNT = new LongAdder();
+    /**
+     * 线程序号
+     */
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+    /**
+     * 给caffeine用的刷新线程池视图，线程池满时在调用线程执行（caffeine的维护任务、移除通知都很轻，不能丢）
+     */
+    private static final Executor CAFFEINE_EXECUTOR = task -> {
+        try {
+            refresh().execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    };
+    /**
+     * 全局配置，未初始化时使用默认值（手动编码创建缓存、未启用spring时）
+     */
+    private static volatile LocalCacheGlobalConfig config;
+
+    /**
+     * 初始化配置，需在第一次获取线程池前调用
+     *
+     * @param globalConfig
+     */
+    public static void init(LocalCacheGlobalConfig globalConfig) {
+        config = globalConfig;
+    }
+
+    /**
+     * 刷新线程池：加载、刷新、过期值的异步刷新、批量合并加载
+     * 平台线程池满了直接拒绝（计数），由调用方决定跳过或在当前线程执行
+     * 配置为虚拟线程且运行环境支持时每个任务一个虚拟线程，不排队也不拒绝
+     *
+     * @return
+     */
+    public static ExecutorService refresh() {
+        return POOL_MAP.computeIfAbsent(REFRESH, name -> {
+            LocalCacheGlobalConfig c = config != null ? config : new LocalCacheGlobalConfig();
+            if (ExecutorTypeEnum.of(c.getExecutor()) == ExecutorTypeEnum.VIRTUAL) {
+                if (LocalCacheVirtualThreads.isSupported()) {
+                    log.info("本地缓存 刷新线程池使用虚拟线程");
+                    return LocalCacheVirtualThreads.newExecutor("【" + c.getThreadPoolThreadNamePrefix() + "】" + name + "-v-");
+                }
+                log.warn("本地缓存 当前运行环境不支持虚拟线程（需JDK21及以上），刷新线程池使用平台线程池");
+            }
+            return new ThreadPoolExecutor(c.getThreadPoolCoreThreadSize(), Math.max(c.getThreadPoolMaxThreadSize(), c.getThreadPoolCoreThreadSize()), 10, TimeUnit.MINUTES,
+                    new ArrayBlockingQueue<>(c.getThreadPoolQueueSize()), threadFactory(name, false), rejectHandler(name));
+        });
+    }
+
+    /**
+     * 刷新线程池是否为虚拟线程
+     *
+     * @return
+     */
+    public static boolean isVirtual() {
+        return !(refresh() instanceof ThreadPoolExecutor);
+    }
+
+    /**
+     * 给caffeine用的执行器（维护任务、移除通知、异步缓存的后续处理），刷新线程池满时在调用线程执行
+     *
+     * @return
+     */
+    public static Executor caffeineExecutor() {
+        return CAFFEINE_EXECUTOR;
+    }
+
+    /**
+     * 清理线程池：每个缓存的内存清理、全局内存回收
+     * 并行度为 cleanParallelism，默认 CPU核数和4取小
+     *
+     * @return
+     */
+    public static ForkJoinPool cleanup() {
+        return (ForkJoinPool) POOL_MAP.computeIfAbsent(CLEANUP, name -> {
+            Integer cleanParallelism = config != null ? config.getCleanParallelism() : null;
+            int parallelism = cleanParallelism != null && cleanParallelism > 0 ? cleanParallelism : Math.min(Runtime.getRuntime().availableProcessors(), 4);
+            return new ForkJoinPool(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("【本地缓存】" + name + "-" + THREAD_INDEX.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        });
+    }
+
+    /**
+     * 写入后处理线程池：单线程执行写入后处理流水线的批量处理任务（同时只有一个），缓存值由流水线自己的有界队列排队
+     * 满了直接拒绝（计数），由流水线在当前线程处理
+     *
+     * @return
+     */
+    public static ThreadPoolExecutor postPut() {
+        return (ThreadPoolExecutor) POOL_MAP.computeIfAbsent(POST_PUT, name -> new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(16), threadFactory(name, true), rejectHandler(name)));
+    }
+
+    /**
+     * 合并批量加载线程池：执行时间窗口到了的批量加载，满了直接拒绝（计数），由调用方在调度线程执行
+     * 线程数为 CPU核数和8取小（至少2），空闲时回收
+     *
+     * @return
+     */
+    public static ThreadPoolExecutor microBatch() {
+        return (ThreadPoolExecutor) POOL_MAP.computeIfAbsent(MICRO_BATCH, name -> {
+            int threads = Math.max(Math.min(Runtime.getRuntime().availableProcessors(), 8), 2);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new ArrayBlockingQueue<>(1024), threadFactory(name, true), rejectHandler(name));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    /**
+     * 启动初始化线程池：启动时并行初始化方法缓存，不占用刷新线程池
+     * 线程数为 CPU核数和4取小，任务数即注解方法数，不拒绝；启动完成后空闲线程回收
+     *
+     * @return
+     */
+    public static ThreadPoolExecutor startup() {
+        return (ThreadPoolExecutor) POOL_MAP.computeIfAbsent(STARTUP, name -> {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory(name, true), rejectHandler(name));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
+    /**
+     * 在刷新线程池执行一个缓存的刷新任务，受该缓存的舱壁限制
+     *
+     * @param cacheName 缓存名
+     * @param permits   舱壁大小，第一次创建该缓存的舱壁时生效
+     * @param task
+     * @return 是否提交成功，false 代表线程池或舱壁已满，本次刷新被跳过
+     */
+    public static boolean tryExecuteRefresh(String cacheName, int permits, Runnable task) {
+        Semaphore bulkhead = BULKHEAD_MAP.computeIfAbsent(cacheName, k -> new Semaphore(Math.max(permits, 1)));
+        if (!bulkhead.tryAcquire()) {
+            SKIPPED_REFRESH_COUNT.increment();
+            return false;
+        }
+        try {
+            refresh().execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            SKIPPED_REFRESH_COUNT.increment();
+            return false;
+        }
+    }
+
+    /**
+     * 默认的刷新舱壁大小，虚拟线程时为 virtualRefreshBulkhead
+     *
+     * @return
+     */
+    public static int defaultRefreshBulkhead() {
+        if (isVirtual()) {
+            Integer virtualRefreshBulkhead = config != null ? config.getVirtualRefreshBulkhead() : null;
+            return virtualRefreshBulkhead != null && virtualRefreshBulkhead > 0 ? virtualRefreshBulkhead : 256;
+        }
+        Integer refreshBulkhead = config != null ? config.getRefreshBulkhead() : null;
+        return refreshBulkhead != null && refreshBulkhead > 0 ? refreshBulkhead : 16;
+    }
+
+    /**
+     * 线程池满时的拒绝异常（共用实例）
+     *
+     * @return
+     */
+    public static RejectedExecutionException rejected() {
+        return REJECTED;
+    }
+
+    /**
+     * 因线程池或舱壁满跳过的刷新次数
+     *
+     * @return
+     */
+    public static long getSkippedRefreshCount() {
+        return SKIPPED_REFRESH_COUNT.sum();
+    }
+
+    /**
+     * 每个线程池的状态，用于监控打印
+     *
+     * @return
+     */
+    public static List<String> stats() {
+        List<String> stats = new ArrayList<>(POOL_MAP.size());
+        POOL_MAP.forEach((name, pool) -> {
+            long rejected = REJECTED_COUNT_MAP.containsKey(name) ? REJECTED_COUNT_MAP.get(name).sum() : 0;
+            if (pool instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor executor = (ThreadPoolExecutor) pool;
+                stats.add(String.format("%s 活跃线程 %d/%d ,排队 %d ,已完成 %d ,拒绝 %d", name, executor.getActiveCount(), executor.getPoolSize(),
+                        executor.getQueue().size(), executor.getCompletedTaskCount(), rejected));
+            } else if (pool instanceof ForkJoinPool) {
+                ForkJoinPool forkJoinPool = (ForkJoinPool) pool;
+                stats.add(String.format("%s 活跃线程 %d/%d ,排队 %d ,拒绝 %d", name, forkJoinPool.getActiveThreadCount(), forkJoinPool.getParallelism(),
+                        forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount(), rejected));
+            } else {
+                stats.add(String.format("%s 虚拟线程 ,拒绝 %d", name, rejected));
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * 关闭所有线程池，已提交的任务执行完
+     */
+    public static void shutdown() {
+        POOL_MAP.values().forEach(ExecutorService::shutdown);
+        POOL_MAP.clear();
+    }
+
+    /**
+     * 线程池已满，不带堆栈
+     */
+    private static final class PoolFullException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        private PoolFullException() {
+            super("本地缓存线程池已满");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * 线程工厂
+     *
+     * @param name
+     * @param daemon
+     * @return
+     */
+    private static ThreadFactory threadFactory(String name, boolean daemon) {
+        String prefix = config != null ? config.getThreadPoolThreadNamePrefix() : "本地缓存";
+        return runnable -> {
+            String threadName = "【" + prefix + "】" + name + "-" + THREAD_INDEX.incrementAndGet();
+            log.info(threadName + " 线程启动");
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * 拒绝策略：计数后抛出共用的拒绝异常
+     *
+     * @param name
+     * @return
+     */
+    private static RejectedExecutionHandler rejectHandler(String name) {
+        LongAdder rejectedCount = REJECTED_COUNT_MAP.computeIfAbsent(name, k -> new LongAdder());
+        return (runnable, executor) -> {
+            rejectedCount.increment();
+            throw REJECTED;
+        };
+    }
+}
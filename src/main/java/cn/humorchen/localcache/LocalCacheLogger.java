@@ -5,10 +5,13 @@ import cn.hutool.core.util.StrUtil;
 import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Supplier;
+
 /**
  * @author  humorchen
  * date: 2023/12/27
  * description: 日志
+ * 先判断开关和日志级别再格式化，参数可传Supplier延迟取值；开启异步日志后debug日志由后台线程格式化和输出
  **/
 @Slf4j
 public class LocalCacheLogger {
@@ -20,6 +23,10 @@ public class LocalCacheLogger {
      * 单条日志最大长度，超过了则截取前n个字符
      */
     private static Integer oneLogMaxLength;
+    /**
+     * 异步日志输出，为空代表同步打印
+     */
+    private static volatile LocalCacheAsyncLogSink asyncLogSink;
 
     /**
      * 设置是否启用日志
@@ -68,8 +75,74 @@ public class LocalCacheLogger {
         return isEnableLog() || (localCache != null && localCache.enableLog());
     }
 
+    /**
+     * 是否开启异步日志
+     *
+     * @param asyncLog       是否异步
+     * @param bufferCapacity 环形缓冲区容量，写满后丢弃新日志
+     */
+    public static void setAsyncLog(boolean asyncLog, int bufferCapacity) {
+        LocalCacheAsyncLogSink old = LocalCacheLogger.asyncLogSink;
+        LocalCacheLogger.asyncLogSink = asyncLog ? new LocalCacheAsyncLogSink(bufferCapacity) : null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * 异步日志因缓冲区满被丢弃的条数
+     *
+     * @return
+     */
+    public static long getAsyncLogDroppedCount() {
+        LocalCacheAsyncLogSink sink = LocalCacheLogger.asyncLogSink;
+        return sink != null ? sink.getDroppedCount() : 0;
+    }
+
+    /**
+     * 是否需要打印debug日志（开关和日志级别都满足）
+     * 热点路径在拼装日志参数前先调用它判断，避免参数装箱和数组分配
+     *
+     * @param localCache
+     * @return
+     */
+    public static boolean isDebugEnabled(LocalCache localCache) {
+        return log.isDebugEnabled() && isEnableLog(localCache);
+    }
+
+    /**
+     * 是否需要打印info日志
+     *
+     * @param localCache
+     * @return
+     */
+    public static boolean isInfoEnabled(LocalCache localCache) {
+        return log.isInfoEnabled() && isEnableLog(localCache);
+    }
+
+    /**
+     * 是否需要打印warn日志
+     *
+     * @param localCache
+     * @return
+     */
+    public static boolean isWarnEnabled(LocalCache localCache) {
+        return log.isWarnEnabled() && isEnableLog(localCache);
+    }
+
+    /**
+     * 是否需要打印error日志
+     *
+     * @param localCache
+     * @return
+     */
+    public static boolean isErrorEnabled(LocalCache localCache) {
+        return log.isErrorEnabled() && isEnableLog(localCache);
+    }
+
     /**
      * 日志操作变字符串
+     * 一次遍历替换占位符 {}，参数为Supplier时在此时才取值，非简单类型转json，null输出为null
      *
      * @param content
      * @param args
@@ -79,21 +152,44 @@ public class LocalCacheLogger {
         if (StrUtil.isBlank(content)) {
             return "";
         }
-        StringBuilder builder = new StringBuilder(content);
-        int len = args != null && args.length > 0 ? args.length : 0;
+        int len = args != null ? args.length : 0;
+        if (len == 0) {
+            return content;
+        }
+        StringBuilder builder = new StringBuilder(content.length() + 16 * len);
+        int from = 0;
         int i = 0;
-        while (i < len) {
-            int index = builder.indexOf("{}");
-            if (index > 0) {
-                Object arg = args[i];
-                String str = ClassUtil.isSimpleValueType(arg.getClass()) ? arg.toString() : JSONObject.toJSONString(arg);
-                builder.replace(index, index + 2, str);
-            }
-            i++;
+        int index;
+        while (i < len && (index = content.indexOf("{}", from)) >= 0) {
+            builder.append(content, from, index);
+            appendArg(builder, args[i++]);
+            from = index + 2;
         }
+        builder.append(content, from, content.length());
         return builder.toString();
     }
 
+    /**
+     * 追加一个日志参数
+     *
+     * @param builder
+     * @param arg
+     */
+    private static void appendArg(StringBuilder builder, Object arg) {
+        if (arg instanceof Supplier) {
+            arg = ((Supplier<?>) arg).get();
+        }
+        if (arg == null) {
+            builder.append("null");
+        } else if (arg instanceof CharSequence) {
+            builder.append((CharSequence) arg);
+        } else if (ClassUtil.isSimpleValueType(arg.getClass())) {
+            builder.append(arg);
+        } else {
+            builder.append(JSONObject.toJSONString(arg));
+        }
+    }
+
     /**
      * 截断log
      *
@@ -114,8 +210,13 @@ public class LocalCacheLogger {
      * @param args
      */
     public static void debug(LocalCache localCache, String content, Object... args) {
-        if (isEnableLog(localCache)) {
-            log.debug(logCutoff(log2String(content, args)));
+        if (isDebugEnabled(localCache)) {
+            LocalCacheAsyncLogSink sink = LocalCacheLogger.asyncLogSink;
+            if (sink != null) {
+                sink.offer(content, args);
+            } else {
+                log.debug(logCutoff(log2String(content, args)));
+            }
         }
     }
 
@@ -125,7 +226,7 @@ public class LocalCacheLogger {
      * @param throwable
      */
     public static void debug(LocalCache localCache, String content, Throwable throwable) {
-        if (isEnableLog(localCache)) {
+        if (isDebugEnabled(localCache)) {
             log.debug(logCutoff(content), throwable);
         }
     }
@@ -136,7 +237,7 @@ public class LocalCacheLogger {
      * @param args
      */
     public static void info(LocalCache localCache, String content, Object... args) {
-        if (isEnableLog(localCache)) {
+        if (isInfoEnabled(localCache)) {
             log.info(logCutoff(log2String(content, args)));
         }
     }
@@ -147,7 +248,7 @@ public class LocalCacheLogger {
      * @param throwable
      */
     public static void info(LocalCache localCache, String content, Throwable throwable) {
-        if (isEnableLog(localCache)) {
+        if (isInfoEnabled(localCache)) {
             log.info(logCutoff(content), throwable);
         }
     }
@@ -158,7 +259,7 @@ public class LocalCacheLogger {
      * @param args
      */
     public static void warn(LocalCache localCache, String content, Object... args) {
-        if (isEnableLog(localCache)) {
+        if (isWarnEnabled(localCache)) {
             log.warn(logCutoff(log2String(content, args)));
         }
     }
@@ -169,7 +270,7 @@ public class LocalCacheLogger {
      * @param throwable
      */
     public static void warn(LocalCache localCache, String content, Throwable throwable) {
-        if (isEnableLog(localCache)) {
+        if (isWarnEnabled(localCache)) {
             log.warn(logCutoff(content), throwable);
         }
     }
@@ -180,7 +281,7 @@ public class LocalCacheLogger {
      * @param args
      */
     public static void error(LocalCache localCache, String content, Object... args) {
-        if (isEnableLog(localCache)) {
+        if (isErrorEnabled(localCache)) {
             log.error(logCutoff(log2String(content, args)));
         }
     }
@@ -191,7 +292,7 @@ public class LocalCacheLogger {
      * @param throwable
      */
     public static void error(LocalCache localCache, String content, Throwable throwable) {
-        if (isEnableLog(localCache)) {
+        if (isErrorEnabled(localCache)) {
             log.error(logCutoff(content), throwable);
         }
     }
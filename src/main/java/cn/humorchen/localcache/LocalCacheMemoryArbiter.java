@@ -0,0 +1,192 @@
+package cn.humorchen.localcache;
+
+import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.humorchen.localcache.aspect.LocalCacheAspect;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
+import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
+import cn.humorchen.localcache.cleaner.LocalCacheCleanerFactory;
+import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
+import cn.humorchen.localcache.enums.CleanStrategyEnum;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/19
+ * description: 全局内存限制的仲裁器
+ * 超出全局内存限制时，按优先级（权重）用注水法给每个缓存分配公平份额（用得少的缓存把剩余份额让给其他缓存），份额不低于保留的最小内存
+ * 先从超出份额的缓存回收超出的部分，仍不够时再从其他缓存回收到保留的最小内存为止
+ * 同一阶段内按边际价值（两次回收之间每字节的命中次数 × 优先级）从低到高回收，每个缓存一次按量批量清理
+ * 正在单独清理的缓存本次跳过，由其他缓存承担
+ **/
+@Component
+@Slf4j
+public class LocalCacheMemoryArbiter {
+    @Autowired
+    private LocalCacheGlobalConfig config;
+    /**
+     * 上次回收时每个缓存的命中次数，用于计算两次回收之间的命中次数
+     */
+    private final Map<String, Long> lastHitCountMap = new ConcurrentHashMap<>();
+    /**
+     * 回收锁，已有回收在执行时直接跳过
+     */
+    private final ReentrantLock reclaimLock = new ReentrantLock();
+
+    /**
+     * 回收全局内存
+     *
+     * @param expectCleanSize 期望回收的字节数
+     * @return 实际回收的字节数
+     */
+    public long reclaim(long expectCleanSize) {
+        if (expectCleanSize <= 0 || !reclaimLock.tryLock()) {
+            return 0;
+        }
+        try {
+            List<CacheShare> shares = collectShares();
+            if (shares.isEmpty()) {
+                return 0;
+            }
+            long used = shares.stream().mapToLong(share -> share.used).sum();
+            assignFairShares(shares, Math.max(used - expectCleanSize, 0));
+            shares.sort(Comparator.comparingDouble(share -> share.marginalValue));
+            long remaining = expectCleanSize;
+            // 先回收超出公平份额的部分
+            for (CacheShare share : shares) {
+                if (remaining <= 0) {
+                    break;
+                }
+                remaining -= reclaim(share, Math.min(share.used - share.fairShare, remaining));
+            }
+            // 仍不够时回收到保留的最小内存为止
+            for (CacheShare share : shares) {
+                if (remaining <= 0) {
+                    break;
+                }
+                remaining -= reclaim(share, Math.min(share.used - share.reserved, remaining));
+            }
+            long cleaned = expectCleanSize - remaining;
+            LocalCacheLogger.info(null, "本地缓存 全局内存回收 期望回收 {} ，实际回收 {} ，参与缓存 {} 个", DataSizeUtil.format(expectCleanSize), DataSizeUtil.format(Math.max(cleaned, 0)), shares.size());
+            return cleaned;
+        } finally {
+            reclaimLock.unlock();
+        }
+    }
+
+    /**
+     * 参与全局回收的缓存（跳过全局内存限制的、空的不参与）
+     *
+     * @return
+     */
+    private List<CacheShare> collectShares() {
+        List<CacheShare> shares = new ArrayList<>();
+        LocalCacheAspect.cacheMap.forEach((cacheName, cache) -> {
+            MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(cacheName);
+            if (plan == null || plan.getLocalCache().skipGlobalMemoryLimit()) {
+                return;
+            }
+            long used = plan.getUsedByteSize().sum();
+            long hitCount = cache.stats().hitCount();
+            Long lastHitCount = lastHitCountMap.put(cacheName, hitCount);
+            if (used <= 0) {
+                return;
+            }
+            long recentHitCount = Math.max(hitCount - (lastHitCount != null ? lastHitCount : 0), 0);
+            shares.add(new CacheShare(plan, used, (double) recentHitCount / used * plan.getPriority()));
+        });
+        return shares;
+    }
+
+    /**
+     * 注水法分配公平份额：按 内存占用/优先级 从小到大，每个缓存分到 剩余预算×优先级/剩余优先级之和，用不完的留给后面的缓存
+     *
+     * @param shares
+     * @param budget
+     */
+    private static void assignFairShares(List<CacheShare> shares, long budget) {
+        shares.sort(Comparator.comparingDouble(share -> (double) share.used / share.priority));
+        long remainingBudget = budget;
+        long remainingPriority = shares.stream().mapToLong(share -> share.priority).sum();
+        for (CacheShare share : shares) {
+            long fairShare = (long) ((double) remainingBudget * share.priority / remainingPriority);
+            if (share.used <= fairShare) {
+                // 用不完份额，剩下的分给后面的缓存
+                share.fairShare = share.used;
+                remainingBudget -= share.used;
+                remainingPriority -= share.priority;
+            } else {
+                share.fairShare = fairShare;
+            }
+            share.fairShare = Math.max(share.fairShare, share.reserved);
+        }
+    }
+
+    /**
+     * 按缓存的清理策略回收指定大小
+     *
+     * @param share
+     * @param cleanSize
+     * @return 实际回收的字节数
+     */
+    private long reclaim(CacheShare share, long cleanSize) {
+        if (cleanSize <= 0 || !share.plan.tryStartCleaning()) {
+            return 0;
+        }
+        long cleaned;
+        try {
+            Cache<LocalCacheKey, LocalCacheValue> cache = share.plan.getCache();
+            CleanStrategyEnum cleanStrategy = CleanStrategyEnum.resolve(share.plan.getLocalCache().cleanStrategy(), config.getCleanStrategy());
+            ILocalCacheCleaner cleaner = LocalCacheCleanerFactory.getCleaner(cleanStrategy);
+            cleaned = cleaner.clean(cache, share.used, cleanSize);
+        } finally {
+            share.plan.finishCleaning();
+        }
+        share.used -= cleaned;
+        LocalCacheLogger.debug(null, "本地缓存 全局内存回收 缓存：{} 公平份额 {} ，回收 {}", share.plan.getMethodKey(), DataSizeUtil.format(share.fairShare), DataSizeUtil.format(cleaned));
+        return cleaned;
+    }
+
+    /**
+     * 单个缓存的份额
+     */
+    private static class CacheShare {
+        private final MethodCachePlan plan;
+        private final int priority;
+        /**
+         * 保留的最小内存，不超过当前占用
+         */
+        private final long reserved;
+        /**
+         * 边际价值，越低越先回收
+         */
+        private final double marginalValue;
+        /**
+         * 当前内存占用
+         */
+        private long used;
+        /**
+         * 公平份额
+         */
+        private long fairShare;
+
+        CacheShare(MethodCachePlan plan, long used, double marginalValue) {
+            this.plan = plan;
+            this.priority = plan.getPriority();
+            this.reserved = Math.min(plan.getMinReservedByteSize(), used);
+            this.marginalValue = marginalValue;
+            this.used = used;
+        }
+    }
+}
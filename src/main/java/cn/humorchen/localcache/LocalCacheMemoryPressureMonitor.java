@@ -0,0 +1,270 @@
+package cn.humorchen.localcache;
+
+import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/20
+ * description: 堆内存压力监视器
+ * 给老年代内存池设置使用阈值，并监听GC通知，每次GC后读取老年代GC后占用：
+ * 超过压力阈值时立即按比例回收方法缓存内存（首次memoryPressureShedRatio，持续有压力时每次翻倍，最多一半），并把全局内存上限临时压到回收后的大小，避免马上又被写满
+ * 低于解除阈值时每次GC把回收比例减半、临时上限翻倍，逐步放开
+ * GC通知类型按字符串匹配，不依赖com.sun.management
+ **/
+@Component
+@Slf4j
+public class LocalCacheMemoryPressureMonitor implements InitializingBean, DisposableBean, NotificationListener {
+    /**
+     * hotspot的GC通知类型
+     */
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    /**
+     * 单次最多回收的比例
+     */
+    private static final double MAX_SHED_RATIO = 0.5;
+
+    @Autowired
+    private LocalCacheGlobalConfig config;
+    @Autowired
+    private LocalCacheMemoryArbiter localCacheMemoryArbiter;
+
+    /**
+     * 老年代内存池，找不到时为空（不监听）
+     */
+    private MemoryPoolMXBean tenuredPool;
+    /**
+     * 已注册监听的通知源
+     */
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    /**
+     * 回收限速，1秒最多回收一次
+     */
+    private final SignalSpeedLimitUtil shedSpeedLimit = new SignalSpeedLimitUtil(1000, 1);
+    /**
+     * 当前回收比例，0 代表没有压力
+     */
+    @Getter
+    private volatile double shedRatio;
+    /**
+     * 压力下临时的全局内存上限（字节），0 代表没有
+     */
+    @Getter
+    private volatile long pressureLimitByte;
+    /**
+     * 最近一次GC后老年代的占用比例
+     */
+    @Getter
+    private volatile double tenuredUsedRatio;
+    /**
+     * 因压力回收的次数
+     */
+    @Getter
+    private final LongAdder shedCount = new LongAdder();
+    /**
+     * 因压力回收的字节数
+     */
+    @Getter
+    private final LongAdder shedByteSize = new LongAdder();
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!Boolean.TRUE.equals(config.getMemoryPressureEnabled())) {
+            return;
+        }
+        tenuredPool = findTenuredPool();
+        if (tenuredPool == null) {
+            LocalCacheLogger.warn(null, "本地缓存 未找到老年代内存池，不根据堆内存压力回收缓存");
+            return;
+        }
+        long max = tenuredPool.getUsage().getMax();
+        if (max > 0) {
+            long threshold = (long) (max * configThreshold());
+            if (tenuredPool.isCollectionUsageThresholdSupported()) {
+                tenuredPool.setCollectionUsageThreshold(threshold);
+            }
+            tenuredPool.setUsageThreshold(threshold);
+        }
+        addListener(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            addListener(gcBean);
+        }
+        LocalCacheLogger.info(null, "本地缓存 开始监听堆内存压力，内存池：{} ，压力阈值：{}", tenuredPool.getName(), configThreshold());
+    }
+
+    @Override
+    public void destroy() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                // 已移除
+            }
+        }
+        emitters.clear();
+    }
+
+    /**
+     * 内存池阈值、GC通知
+     *
+     * @param notification
+     * @param handback
+     */
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (GC_NOTIFICATION.equals(type) || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type) || MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)) {
+            try {
+                evaluate();
+            } catch (Exception e) {
+                log.error("本地缓存 处理堆内存压力报错", e);
+            }
+        }
+    }
+
+    /**
+     * 按老年代GC后的占用判断是否有压力
+     * 使用阈值通知（未GC）只用于唤醒，判断一律用GC后的占用，避免把还没回收的垃圾当成压力
+     */
+    public void evaluate() {
+        if (tenuredPool == null) {
+            return;
+        }
+        MemoryUsage usage = tenuredPool.getCollectionUsage();
+        if (usage == null || usage.getMax() <= 0) {
+            return;
+        }
+        double ratio = (double) usage.getUsed() / usage.getMax();
+        this.tenuredUsedRatio = ratio;
+        if (ratio >= configThreshold()) {
+            onPressure(ratio);
+        } else if (ratio < configRelaxThreshold()) {
+            relax();
+        }
+    }
+
+    /**
+     * 全局内存限制的实际上限：配置的上限和压力下临时上限取小
+     *
+     * @param configuredLimitByte 配置的全局上限，0 无限制
+     * @return 0 无限制
+     */
+    public long effectiveGlobalLimit(long configuredLimitByte) {
+        long pressureLimit = this.pressureLimitByte;
+        if (configuredLimitByte > 0 && pressureLimit > 0) {
+            return Math.min(configuredLimitByte, pressureLimit);
+        }
+        return Math.max(configuredLimitByte, pressureLimit);
+    }
+
+    /**
+     * 有压力：按比例回收，比例逐次翻倍
+     *
+     * @param ratio
+     */
+    private void onPressure(double ratio) {
+        if (!shedSpeedLimit.tryGetSignal()) {
+            return;
+        }
+        double step = shedRatio > 0 ? Math.min(shedRatio * 2, MAX_SHED_RATIO) : Math.min(configShedRatio(), MAX_SHED_RATIO);
+        this.shedRatio = step;
+        long used = LocalCacheSizeUtil.getAllMethodCacheByteSize();
+        long expectCleanSize = (long) (used * step);
+        if (expectCleanSize <= 0) {
+            return;
+        }
+        this.pressureLimitByte = Math.max(used - expectCleanSize, 1);
+        shedCount.increment();
+        LocalCacheLogger.warn(null, "本地缓存 堆内存压力 GC后老年代占用 {}% ，回收缓存内存 {} （{}%）", Math.round(ratio * 100), DataSizeUtil.format(expectCleanSize), Math.round(step * 100));
+        LocalCacheExecutors.cleanup().execute(() -> shedByteSize.add(Math.max(localCacheMemoryArbiter.reclaim(expectCleanSize), 0)));
+    }
+
+    /**
+     * 压力解除：回收比例减半、临时上限翻倍，比例降到初始比例以下时取消临时上限
+     */
+    private void relax() {
+        if (shedRatio <= 0 && pressureLimitByte <= 0) {
+            return;
+        }
+        double step = shedRatio / 2;
+        if (step < configShedRatio()) {
+            this.shedRatio = 0;
+            this.pressureLimitByte = 0;
+            LocalCacheLogger.info(null, "本地缓存 堆内存压力解除，取消临时内存上限");
+        } else {
+            this.shedRatio = step;
+            this.pressureLimitByte = pressureLimitByte > Long.MAX_VALUE / 2 ? 0 : pressureLimitByte * 2;
+        }
+    }
+
+    /**
+     * 注册监听
+     *
+     * @param bean
+     */
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(this, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    /**
+     * 老年代内存池：支持使用阈值的堆内存池（eden、survivor不支持），有多个时取最大的
+     *
+     * @return
+     */
+    private static MemoryPoolMXBean findTenuredPool() {
+        MemoryPoolMXBean tenured = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+                    && (tenured == null || pool.getUsage().getMax() > tenured.getUsage().getMax())) {
+                tenured = pool;
+            }
+        }
+        return tenured;
+    }
+
+    /**
+     * 压力阈值
+     *
+     * @return
+     */
+    private double configThreshold() {
+        return config.getMemoryPressureThreshold() != null ? config.getMemoryPressureThreshold() : 0.85;
+    }
+
+    /**
+     * 压力解除阈值
+     *
+     * @return
+     */
+    private double configRelaxThreshold() {
+        return config.getMemoryPressureRelaxThreshold() != null ? config.getMemoryPressureRelaxThreshold() : 0.7;
+    }
+
+    /**
+     * 首次回收比例
+     *
+     * @return
+     */
+    private double configShedRatio() {
+        return config.getMemoryPressureShedRatio() != null && config.getMemoryPressureShedRatio() > 0 ? config.getMemoryPressureShedRatio() : 0.1;
+    }
+}
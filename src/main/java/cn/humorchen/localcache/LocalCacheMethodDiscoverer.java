@@ -0,0 +1,82 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.aspect.LocalCacheAspect;
+import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/24
+ * description: 缓存注解方法的启动发现
+ * 每个bean初始化后扫描带 @LocalCache、@LocalCacheBatch 的方法，所有单例创建完后（对外提供服务前）交给切面并行初始化缓存
+ * 之后创建的bean（懒加载、原型）仍在方法第一次调用时初始化
+ **/
+@Component
+@Slf4j
+public class LocalCacheMethodDiscoverer implements BeanPostProcessor, SmartInitializingSingleton, BeanFactoryAware {
+    /**
+     * 缓存注解
+     */
+    private static final List<Class<? extends Annotation>> ANNOTATION_TYPES = Arrays.asList(LocalCache.class, LocalCacheBatch.class);
+    /**
+     * 发现的方法
+     */
+    private final Set<Method> methods = ConcurrentHashMap.newKeySet();
+    private BeanFactory beanFactory;
+    /**
+     * 是否已完成启动初始化
+     */
+    private volatile boolean prepared;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (prepared) {
+            return bean;
+        }
+        Class<?> targetClass = ClassUtils.getUserClass(AopUtils.getTargetClass(bean));
+        if (AnnotationUtils.isCandidateClass(targetClass, ANNOTATION_TYPES)) {
+            ReflectionUtils.doWithMethods(targetClass, methods::add,
+                    method -> !method.isBridge() && !method.isSynthetic() && (method.isAnnotationPresent(LocalCache.class) || method.isAnnotationPresent(LocalCacheBatch.class)));
+        }
+        return bean;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        prepared = true;
+        try {
+            LocalCacheGlobalConfig config = beanFactory.getBeanProvider(LocalCacheGlobalConfig.class).getIfAvailable();
+            LocalCacheAspect aspect = beanFactory.getBeanProvider(LocalCacheAspect.class).getIfAvailable();
+            if (config == null || aspect == null || !Boolean.TRUE.equals(config.getEagerInit())) {
+                return;
+            }
+            aspect.prepareMethodCachePlans(methods);
+        } catch (Exception e) {
+            log.error("本地缓存 启动时初始化方法缓存报错", e);
+        } finally {
+            methods.clear();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package cn.humorchen.localcache;
+
+import cn.hutool.core.lang.Assert;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.MethodCachePlan;
+import cn.humorchen.localcache.interfaces.ILocalCacheMethodInvoker;
+import cn.humorchen.localcache.interfaces.Impl.MethodHandleInvoker;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/11
+ * description: 跨调用方的未命中合并批量加载（DataLoader模式）
+ * 单个id的方法配置了 @LocalCache(batchLoader = "批量方法名") 后，并发的缓存未命中不再各自执行被代理方法，
+ * 而是在 batchWindowMillis 时间窗口内（或攒够 batchMaxSize 个）收集起来，合并成一次批量方法调用，再把结果分发给各个等待的调用方
+ * 批量方法需与单个id的方法在同一个类中，只有一个Collection/List/Set参数，返回 Map&lt;id, 值&gt; 或 List&lt;值&gt;（需配置batchKeyProperty）
+ * 批量加载在单独的合并批量加载线程池执行；调用方限时等待（时间窗口加合并加载的等待时间），超时后自行执行单个id的方法
+ **/
+@Slf4j
+@Getter
+public class LocalCacheMicroBatcher {
+    /**
+     * 时间窗口调度线程，所有批量加载器共用
+     */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "【本地缓存】micro-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 方法缓存执行计划
+     */
+    private final MethodCachePlan plan;
+    /**
+     * 批量方法
+     */
+    private final Method batchMethod;
+    /**
+     * 批量方法的调用器
+     */
+    private final ILocalCacheMethodInvoker batchInvoker;
+    /**
+     * 批量方法的id集合参数是否为Set，否则传List
+     */
+    private final boolean setArg;
+    /**
+     * 时间窗口（纳秒）
+     */
+    private final long windowNanos;
+    /**
+     * 调用方等待批量加载结果的最长毫秒数
+     */
+    private final long waitMillis;
+    /**
+     * 一批最多的id数
+     */
+    private final int maxSize;
+    /**
+     * 批量加载次数
+     */
+    private final LongAdder batchCount = new LongAdder();
+    /**
+     * 批量加载的id总数
+     */
+    private final LongAdder batchKeyCount = new LongAdder();
+    /**
+     * 参与批量加载的调用次数
+     */
+    private final LongAdder queuedCount = new LongAdder();
+    /**
+     * 排队等待的总时间（纳秒）
+     */
+    private final LongAdder queueWaitNanos = new LongAdder();
+    /**
+     * 当前收集中的一批
+     */
+    private List<Pending> pendingList = new ArrayList<>();
+
+    public LocalCacheMicroBatcher(MethodCachePlan plan) {
+        LocalCache localCache = plan.getLocalCache();
+        Method method = plan.getMethod();
+        Assert.isTrue(method.getParameterCount() == 1, () -> new IllegalArgumentException("batchLoader只支持单个参数的方法：" + method));
+        this.plan = plan;
+        this.batchMethod = findBatchMethod(method, localCache.batchLoader());
+        this.batchInvoker = MethodHandleInvoker.create(batchMethod);
+        this.setArg = !batchMethod.getParameterTypes()[0].isAssignableFrom(ArrayList.class);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(localCache.batchWindowMillis(), 0));
+        this.maxSize = Math.max(localCache.batchMaxSize(), 1);
+        this.waitMillis = TimeUnit.NANOSECONDS.toMillis(windowNanos) + plan.getSingleFlightWaitMillis();
+    }
+
+    /**
+     * 在方法所在类中查找批量方法，参数需能接收ArrayList或LinkedHashSet
+     *
+     * @param method
+     * @param batchLoader
+     * @return
+     */
+    private static Method findBatchMethod(Method method, String batchLoader) {
+        for (Method candidate : method.getDeclaringClass().getMethods()) {
+            if (!candidate.getName().equals(batchLoader) || candidate.getParameterCount() != 1) {
+                continue;
+            }
+            Class<?> argType = candidate.getParameterTypes()[0];
+            if (argType.isAssignableFrom(ArrayList.class) || argType.isAssignableFrom(LinkedHashSet.class)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("batchLoader找不到批量方法 " + batchLoader + "(Collection/List/Set)，所在类：" + method.getDeclaringClass().getName());
+    }
+
+    /**
+     * 加入当前批次并等待批量加载的结果
+     *
+     * @param key
+     * @return 被代理方法的返回值，批量方法返回值中没有的id为null
+     * @throws Throwable 批量方法（等待超时后为单个id的方法）抛出的异常原样抛出
+     */
+    public Object load(LocalCacheKey key) throws Throwable {
+        Pending pending = new Pending(key);
+        List<Pending> full = null;
+        boolean first;
+        synchronized (this) {
+            first = pendingList.isEmpty();
+            pendingList.add(pending);
+            if (pendingList.size() >= maxSize) {
+                full = pendingList;
+                pendingList = new ArrayList<>();
+            }
+        }
+        if (full != null) {
+            // 攒够一批直接在当前线程执行
+            dispatch(full);
+        } else if (first) {
+            // 窗口内第一个id负责调度
+            if (windowNanos > 0) {
+                SCHEDULER.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+            } else {
+                flush();
+            }
+        }
+        try {
+            return pending.future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        } catch (TimeoutException e) {
+            LocalCacheLogger.warn(plan.getLocalCache(), "本地缓存：{} 等待合并批量加载超时 {} ms，自行执行被代理方法", plan.getMethodKey(), waitMillis);
+            return plan.getInvoker().invoke(key.getTarget(), key.getArgs());
+        }
+    }
+
+    /**
+     * 时间窗口到了，取出当前批次交给合并批量加载线程池执行
+     */
+    private void flush() {
+        List<Pending> batch;
+        synchronized (this) {
+            if (pendingList.isEmpty()) {
+                return;
+            }
+            batch = pendingList;
+            pendingList = new ArrayList<>();
+        }
+        try {
+            LocalCacheExecutors.microBatch().execute(() -> dispatch(batch));
+        } catch (RuntimeException e) {
+            // 线程池满了在调度线程执行
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * 执行一次批量加载并分发结果
+     *
+     * @param batch
+     */
+    private void dispatch(List<Pending> batch) {
+        long now = System.nanoTime();
+        queuedCount.add(batch.size());
+        // 按被代理对象分组（通常只有一个）
+        Map<Object, List<Pending>> targetMap = new IdentityHashMap<>();
+        for (Pending pending : batch) {
+            queueWaitNanos.add(now - pending.enqueueNanos);
+            targetMap.computeIfAbsent(pending.key.getTarget(), k -> new ArrayList<>()).add(pending);
+        }
+        targetMap.forEach((target, pendings) -> {
+            Set<Object> ids = new LinkedHashSet<>();
+            for (Pending pending : pendings) {
+                ids.add(pending.key.getArgs()[0]);
+            }
+            batchCount.increment();
+            batchKeyCount.add(ids.size());
+            try {
+                Collection<Object> arg = setArg ? ids : new ArrayList<>(ids);
+                Object result = batchInvoker.invoke(target, new Object[]{arg});
+                Map<?, ?> resultIndex = LocalCacheUtil.indexBatchResult(result, plan.getLocalCache().batchKeyProperty());
+                for (Pending pending : pendings) {
+                    pending.future.complete(LocalCacheUtil.getBatchResult(resultIndex, pending.key.getArgs()[0]));
+                }
+            } catch (Throwable e) {
+                for (Pending pending : pendings) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        });
+        LocalCacheLogger.debug(plan.getLocalCache(), "本地缓存：{} 合并批量加载 {} 个id", plan.getMethodKey(), batch.size());
+    }
+
+    /**
+     * 平均每批的id数
+     *
+     * @return
+     */
+    public double getAvgBatchSize() {
+        long count = batchCount.sum();
+        return count > 0 ? (double) batchKeyCount.sum() / count : 0;
+    }
+
+    /**
+     * 平均排队等待时间（纳秒）
+     *
+     * @return
+     */
+    public double getAvgQueueWaitNanos() {
+        long queued = queuedCount.sum();
+        return queued > 0 ? (double) queueWaitNanos.sum() / queued : 0;
+    }
+
+    /**
+     * 等待批量加载的调用
+     */
+    private static class Pending {
+        private final LocalCacheKey key;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final long enqueueNanos = System.nanoTime();
+
+        private Pending(LocalCacheKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package cn.humorchen.localcache;
 
 import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.humorchen.localcache.aspect.LocalCacheAspect;
+import cn.humorchen.localcache.bean.MethodCachePlan;
 import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
 import com.alibaba.fastjson.JSONObject;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -13,6 +15,8 @@ import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import static cn.humorchen.localcache.LocalCacheContext.*;
 /**
@@ -30,9 +34,19 @@ public class LocalCacheMonitor {
      * 纳秒到微秒的倍数
      */
     private static final BigDecimal NANOS_TO_MILLS = BigDecimal.valueOf(1000000);
+    /**
+     * 按返回值类型打印内存占用的前几名
+     */
+    private static final int VALUE_CLASS_TOP_N = 5;
+    /**
+     * 打印内存占用最大的前几个值（只有维护了大小索引的缓存）
+     */
+    private static final int LARGEST_VALUE_TOP_N = 5;
 
     @Autowired
     private LocalCacheGlobalConfig config;
+    @Autowired
+    private LocalCacheMemoryPressureMonitor localCacheMemoryPressureMonitor;
 
 
 
@@ -67,15 +81,38 @@ public class LocalCacheMonitor {
             String loadPenaltyInMills = nanosToMills(loadPenaltyInNanoS).toString();
             BigDecimal hitRate = BigDecimal.valueOf(stats.hitRate() * 100).setScale(2, RoundingMode.HALF_UP);
             long estimatedSize = cache.estimatedSize();
-            long cacheByteSize = LocalCacheSizeUtil.getCacheByteSize(cache);
+            MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(cacheName);
+            long cacheByteSize = plan != null ? plan.getUsedByteSize().sum() : LocalCacheSizeUtil.getCacheByteSize(cache);
             long avgValueByteSize = estimatedSize > 0 ? cacheByteSize / estimatedSize : 0;
             long requestCount = stats.requestCount();
             long hitCount = stats.hitCount();
             long missCount = stats.missCount();
             long evictionCount = stats.evictionCount();
             LocalCache localCache = LOCAL_CACHE_MAP.get(cacheName);
-            log.info("【本地缓存状态】key：{} ,缓存命中率 {}% , 当前缓存值{} 个,总占用内存 {} ,平均单个内存 {}, 总请求数 {} 次 ,平均加载耗时 {} ms , 缓存命中次数 {} 次 , 缓存未命中次数 {} 次 , 淘汰key次数 {} 次 , 缓存配置：{}",
-                    cacheName, hitRate, estimatedSize, DataSizeUtil.format(cacheByteSize), DataSizeUtil.format(avgValueByteSize), requestCount, loadPenaltyInMills, hitCount, missCount, evictionCount, JSONObject.toJSONString(localCache));
+            long coalescedLoadCount = plan != null ? plan.getCoalescedLoadCount().sum() : 0;
+            log.info("【本地缓存状态】key：{} ,缓存命中率 {}% , 当前缓存值{} 个,总占用内存 {} ,平均单个内存 {}, 总请求数 {} 次 ,平均加载耗时 {} ms , 缓存命中次数 {} 次 , 缓存未命中次数 {} 次 , 合并加载次数 {} 次 , 淘汰key次数 {} 次 , 缓存配置：{}",
+                    cacheName, hitRate, estimatedSize, DataSizeUtil.format(cacheByteSize), DataSizeUtil.format(avgValueByteSize), requestCount, loadPenaltyInMills, hitCount, missCount, coalescedLoadCount, evictionCount, JSONObject.toJSONString(localCache));
+            if (plan != null && estimatedSize > 0) {
+                // 按返回值类型的内存占用，前几名
+                String byteSizeByValueClass = LocalCacheSizeUtil.getMethodCacheByteSizeByValueClass(plan.getCache()).entrySet().stream()
+                        .limit(VALUE_CLASS_TOP_N)
+                        .map(entry -> entry.getKey() + "=" + DataSizeUtil.format(entry.getValue()))
+                        .collect(Collectors.joining(", "));
+                log.info("【本地缓存状态】key：{} ,按返回值类型内存占用 {}", cacheName, byteSizeByValueClass);
+            }
+            LocalCacheSizeIndex sizeIndex = plan != null ? plan.getSizeIndex() : null;
+            if (sizeIndex != null) {
+                // 从大小索引取内存占用最大的几个值，不遍历缓存
+                String largestValues = sizeIndex.topN(LARGEST_VALUE_TOP_N).stream()
+                        .map(value -> Arrays.toString(value.getKey().getArgs()) + "=" + DataSizeUtil.format(LocalCacheSizeUtil.getEntryByteSize(value)))
+                        .collect(Collectors.joining(", "));
+                log.info("【本地缓存状态】key：{} ,内存占用最大的值 {}", cacheName, largestValues);
+            }
+            LocalCacheMicroBatcher microBatcher = plan != null ? plan.getMicroBatcher() : null;
+            if (microBatcher != null) {
+                log.info("【本地缓存状态】key：{} ,合并批量加载次数 {} 次 ,平均每批id数 {} ,平均排队等待 {} ms",
+                        cacheName, microBatcher.getBatchCount().sum(), BigDecimal.valueOf(microBatcher.getAvgBatchSize()).setScale(2, RoundingMode.HALF_UP), nanosToMills(microBatcher.getAvgQueueWaitNanos()));
+            }
         } catch (Exception e) {
             log.error("【本地缓存状态】key：" + cacheName + "打印缓存状态报错", e);
         }
@@ -89,8 +126,25 @@ public class LocalCacheMonitor {
         if (config.getDisabled()) {
             log.info("本地缓存已被全局禁用");
         } else {
-            LocalCacheLogger.info(null, "项目全局配置：{}", JSONObject.toJSONString(config));
+            LocalCacheLogger.info(null, "项目全局配置：{}", config);
             LocalCacheContext.getCacheMap().forEach(this::printCacheStatus);
+            LocalCachePostPutPipeline postPutPipeline = LocalCacheAspect.getPostPutPipeline();
+            if (postPutPipeline != null) {
+                log.info("【本地缓存状态】写入后处理 已处理 {} 条 ,排队 {} 条 ,队列满后同步处理 {} 条 ,队列满后丢弃 {} 条",
+                        postPutPipeline.getProcessedCount().sum(), postPutPipeline.getQueueSize(), postPutPipeline.getCallerRunsCount().sum(), postPutPipeline.getDroppedCount().sum());
+            }
+            for (String poolStats : LocalCacheExecutors.stats()) {
+                log.info("【本地缓存状态】线程池 {}", poolStats);
+            }
+            log.info("【本地缓存状态】线程池或舱壁已满跳过的刷新 {} 次", LocalCacheExecutors.getSkippedRefreshCount());
+            LocalCacheReferenceDrainer referenceDrainer = LocalCacheAspect.getReferenceDrainer();
+            if (referenceDrainer != null) {
+                log.info("【本地缓存状态】被gc回收后移除的缓存值 {} 个", referenceDrainer.getDrainedCount().sum());
+            }
+            log.info("【本地缓存状态】堆内存压力 GC后老年代占用 {}% ,当前回收比例 {}% ,临时内存上限 {} ,压力回收 {} 次共 {}",
+                    Math.round(localCacheMemoryPressureMonitor.getTenuredUsedRatio() * 100), Math.round(localCacheMemoryPressureMonitor.getShedRatio() * 100),
+                    localCacheMemoryPressureMonitor.getPressureLimitByte() > 0 ? DataSizeUtil.format(localCacheMemoryPressureMonitor.getPressureLimitByte()) : "无",
+                    localCacheMemoryPressureMonitor.getShedCount().sum(), DataSizeUtil.format(localCacheMemoryPressureMonitor.getShedByteSize().sum()));
         }
 
         log.info("-----------------------本地缓存状态打印结束-----------------------");
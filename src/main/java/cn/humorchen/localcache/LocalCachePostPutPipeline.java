@@ -0,0 +1,163 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.enums.PostPutOverflowPolicyEnum;
+import cn.humorchen.localcache.interfaces.ILocalCachePutValueTrigger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/14
+ * description: 缓存值写入后的处理流水线
+ * 写入缓存后业务线程只把缓存值放进有界队列，估算内存占用、累加内存统计、执行写入触发器由写入后处理线程池批量完成
+ * 队列从空变为非空时提交一个批量处理任务（同时只有一个），任务把队列取空后退出，线程由共用线程池注册表提供
+ * 队列满时按 PostPutOverflowPolicyEnum 处理；未开启异步时在业务线程同步处理
+ **/
+@Slf4j
+public class LocalCachePostPutPipeline {
+    /**
+     * 每批最多处理的条数
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+    /**
+     * 写入触发器
+     */
+    private final List<ILocalCachePutValueTrigger> localCachePutValueTriggers;
+    /**
+     * 待处理队列，为空代表同步处理
+     */
+    private final BlockingQueue<LocalCacheValue> queue;
+    /**
+     * 队列满时的处理策略
+     */
+    private final PostPutOverflowPolicyEnum overflowPolicy;
+    /**
+     * 是否已有批量处理任务在执行或排队
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+    /**
+     * 批量处理任务，提交时不再创建对象
+     */
+    private final Runnable drainTask = this::drain;
+    /**
+     * 当前批次，只有持有 draining 的线程访问
+     */
+    private final List<LocalCacheValue> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    /**
+     * 异步处理的条数
+     */
+    @Getter
+    private final LongAdder processedCount = new LongAdder();
+    /**
+     * 队列满后被丢弃的条数
+     */
+    @Getter
+    private final LongAdder droppedCount = new LongAdder();
+    /**
+     * 队列满后在业务线程同步处理的条数
+     */
+    @Getter
+    private final LongAdder callerRunsCount = new LongAdder();
+
+    public LocalCachePostPutPipeline(List<ILocalCachePutValueTrigger> localCachePutValueTriggers, boolean async, int capacity, PostPutOverflowPolicyEnum overflowPolicy) {
+        this.localCachePutValueTriggers = localCachePutValueTriggers;
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : PostPutOverflowPolicyEnum.CALLER_RUNS;
+        this.queue = async ? new ArrayBlockingQueue<>(Math.max(capacity, 16)) : null;
+    }
+
+    /**
+     * 缓存值已写入缓存，提交后处理
+     *
+     * @param localCacheValue
+     */
+    public void submit(LocalCacheValue localCacheValue) {
+        if (localCacheValue == null) {
+            return;
+        }
+        if (queue == null) {
+            process(localCacheValue);
+            return;
+        }
+        if (!queue.offer(localCacheValue)) {
+            if (overflowPolicy == PostPutOverflowPolicyEnum.DISCARD) {
+                droppedCount.increment();
+            } else {
+                callerRunsCount.increment();
+                process(localCacheValue);
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 当前排队的条数
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * 没有批量处理任务时提交一个，线程池每次从注册表取（注册表关闭后会重建）
+     * 线程池拒绝时在当前线程处理，已进入队列的不丢弃
+     */
+    private void scheduleDrain() {
+        if (draining.get() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalCacheExecutors.postPut().execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            drain();
+        }
+    }
+
+    /**
+     * 处理一个缓存值：估算内存占用并累加统计，执行写入触发器
+     *
+     * @param localCacheValue
+     */
+    private void process(LocalCacheValue localCacheValue) {
+        LocalCacheSizeUtil.onPut(localCacheValue);
+        LocalCacheKey key = localCacheValue.getKey();
+        for (ILocalCachePutValueTrigger trigger : localCachePutValueTriggers) {
+            try {
+                trigger.trigger(key.getMethodKey(), key.getLocalCache(), key, localCacheValue);
+            } catch (Exception e) {
+                log.error("本地缓存 写入触发器执行报错 {}", trigger.getClass().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 批量取出并处理直到队列为空，退出前再检查一次，避免退出时新放入的没有任务处理
+     */
+    private void drain() {
+        do {
+            while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+                try {
+                    for (LocalCacheValue localCacheValue : batch) {
+                        process(localCacheValue);
+                    }
+                } catch (Throwable e) {
+                    log.error("本地缓存 写入后处理报错", e);
+                } finally {
+                    processedCount.add(batch.size());
+                    batch.clear();
+                }
+            }
+            draining.set(false);
+        } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+    }
+}
@@ -0,0 +1,109 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.aspect.LocalCacheAspect;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/21
+ * description: 被gc回收的缓存值的回收线程
+ * 守护线程阻塞等待引用队列，值一被gc回收就批量从缓存移除，不再占着缓存位置、也不会被当成命中
+ * 按值条件移除，同一个key已写入新值时不受影响
+ **/
+@Slf4j
+public class LocalCacheReferenceDrainer {
+    /**
+     * 每批最多处理的条数
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+    /**
+     * 引用队列
+     */
+    private final ReferenceQueue<Object> referenceQueue;
+    /**
+     * 处理线程
+     */
+    private final Thread worker;
+    private volatile boolean running = true;
+    /**
+     * 从缓存移除的被回收值个数
+     */
+    @Getter
+    private final LongAdder drainedCount = new LongAdder();
+
+    public LocalCacheReferenceDrainer(ReferenceQueue<Object> referenceQueue) {
+        this.referenceQueue = referenceQueue;
+        this.worker = new Thread(this::drain, "【本地缓存】reference-drain");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 停止处理线程
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * 阻塞取出第一个，再把已入队的一起取出，批量移除
+     */
+    private void drain() {
+        List<LocalCacheValue> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                Reference<?> reference = referenceQueue.remove();
+                do {
+                    if (reference instanceof LocalCacheValue.ValueReference) {
+                        batch.add(((LocalCacheValue.ValueReference) reference).getOwner());
+                    }
+                } while (batch.size() < MAX_BATCH_SIZE && (reference = referenceQueue.poll()) != null);
+                int handled = 0;
+                for (LocalCacheValue localCacheValue : batch) {
+                    if (invalidate(localCacheValue)) {
+                        handled++;
+                    }
+                }
+                drainedCount.add(handled);
+                if (handled > 0) {
+                    LocalCacheLogger.debug(null, "本地缓存 移除被gc回收的缓存值 {} 个", handled);
+                }
+            } catch (InterruptedException e) {
+                // shutdown 唤醒
+            } catch (Throwable e) {
+                log.error("本地缓存 移除被gc回收的缓存值报错", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 从所属缓存移除
+     *
+     * @param localCacheValue
+     * @return 是否移除
+     */
+    private static boolean invalidate(LocalCacheValue localCacheValue) {
+        LocalCacheKey localCacheKey = localCacheValue.getKey();
+        MethodCachePlan plan = localCacheKey.getPlan();
+        Cache<LocalCacheKey, LocalCacheValue> cache = plan != null ? plan.getCache() : LocalCacheAspect.cacheMap.get(localCacheKey.getMethodKey());
+        if (cache == null || !cache.asMap().remove(localCacheKey, localCacheValue)) {
+            return false;
+        }
+        LocalCacheLogger.info(localCacheKey.getLocalCache(), "本地缓存：{} 值已被gc回收，缓存值失效", localCacheKey.getMethodKey());
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+package cn.humorchen.localcache;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/22
+ * description: 走共享刷新线程池的加载器包装
+ * 同一个key同时只有一个刷新任务，按缓存舱壁限制并发；线程池或舱壁满时跳过本次刷新：
+ * 过期时间按值的写入时间计算的（LocalCacheValueExpiry）直接以旧值完成，旧值照常过期；
+ * 其他的以拒绝异常完成，caffeine恢复旧值的写入时间，下次访问再尝试刷新
+ **/
+public class LocalCacheRefreshLoader<K, V> implements CacheLoader<K, V> {
+    /**
+     * 被包装的加载器
+     */
+    private final CacheLoader<K, V> delegate;
+    /**
+     * 缓存名（舱壁按缓存名区分）
+     */
+    private final String cacheName;
+    /**
+     * 舱壁大小
+     */
+    private final int bulkhead;
+    /**
+     * 跳过刷新时是否以旧值完成
+     */
+    private final boolean keepOldValueOnSkip;
+    /**
+     * 正在刷新的key
+     */
+    private final ConcurrentMap<K, CompletableFuture<V>> refreshing = new ConcurrentHashMap<>();
+
+    public LocalCacheRefreshLoader(CacheLoader<K, V> delegate, String cacheName, int bulkhead, boolean keepOldValueOnSkip) {
+        this.delegate = delegate;
+        this.cacheName = cacheName;
+        this.bulkhead = bulkhead;
+        this.keepOldValueOnSkip = keepOldValueOnSkip;
+    }
+
+    @Override
+    public V load(K key) throws Exception {
+        return delegate.load(key);
+    }
+
+    @Override
+    public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+        return delegate.loadAll(keys);
+    }
+
+    @Override
+    public V reload(K key, V oldValue) throws Exception {
+        return delegate.reload(key, oldValue);
+    }
+
+    /**
+     * 在共享刷新线程池异步刷新，忽略caffeine传入的执行器
+     *
+     * @param key
+     * @param oldValue
+     * @param executor
+     * @return
+     */
+    @Override
+    public CompletableFuture<V> asyncReload(K key, V oldValue, Executor executor) {
+        CompletableFuture<V> inFlight = refreshing.get(key);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        inFlight = refreshing.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        boolean submitted = LocalCacheExecutors.tryExecuteRefresh(cacheName, bulkhead, () -> {
+            try {
+                future.complete(delegate.reload(key, oldValue));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                refreshing.remove(key, future);
+            }
+        });
+        if (submitted) {
+            return future;
+        }
+        refreshing.remove(key, future);
+        if (keepOldValueOnSkip) {
+            future.complete(oldValue);
+        } else {
+            future.completeExceptionally(LocalCacheExecutors.rejected());
+        }
+        return future;
+    }
+}
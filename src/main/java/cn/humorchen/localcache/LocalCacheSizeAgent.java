@@ -0,0 +1,45 @@
+package cn.humorchen.localcache;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/13
+ * description: 用于精确计算缓存内存占用的java agent
+ * 启动参数加上 -javaagent:LocalCache.jar 即可，加载后缓存值内存估算默认改用 InstrumentationSizeEstimator
+ **/
+public class LocalCacheSizeAgent {
+    private static volatile Instrumentation instrumentation;
+
+    private LocalCacheSizeAgent() {
+    }
+
+    /**
+     * 启动时加载
+     *
+     * @param args
+     * @param inst
+     */
+    public static void premain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * 运行时attach加载
+     *
+     * @param args
+     * @param inst
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * 获取Instrumentation，未加载agent时为空
+     *
+     * @return
+     */
+    public static Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+}
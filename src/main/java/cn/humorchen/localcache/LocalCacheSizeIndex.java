@@ -0,0 +1,131 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.bean.LocalCacheValue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/16
+ * description: 方法缓存按内存占用分桶的索引，用于大内存优先淘汰（SIZE_MAX_FIRST）
+ * 按内存占用的log2分为64个桶，写入后处理时加入、移除监听器移除，取最大值只需从最高的非空桶取一个，不用遍历整个缓存
+ * 同一个桶内的值大小相差不超过一倍，取出的是近似最大值
+ **/
+public class LocalCacheSizeIndex {
+    /**
+     * 桶数，long的位数
+     */
+    private static final int BUCKET_COUNT = 64;
+    /**
+     * 桶，下标为内存占用的log2
+     */
+    private final Set<LocalCacheValue>[] buckets;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LocalCacheSizeIndex() {
+        buckets = new Set[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * 加入索引，负缓存不加入
+     *
+     * @param localCacheValue
+     */
+    public void add(LocalCacheValue localCacheValue) {
+        long byteSize = LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+        if (byteSize > 0) {
+            buckets[bucketOf(byteSize)].add(localCacheValue);
+        }
+    }
+
+    /**
+     * 移出索引
+     *
+     * @param localCacheValue
+     */
+    public void remove(LocalCacheValue localCacheValue) {
+        long byteSize = LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+        if (byteSize > 0) {
+            buckets[bucketOf(byteSize)].remove(localCacheValue);
+        }
+    }
+
+    /**
+     * 取出（并移出索引）内存占用最大的一个值，索引为空时返回null
+     *
+     * @return
+     */
+    public LocalCacheValue pollLargest() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            Set<LocalCacheValue> bucket = buckets[i];
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            Iterator<LocalCacheValue> iterator = bucket.iterator();
+            while (iterator.hasNext()) {
+                LocalCacheValue localCacheValue = iterator.next();
+                // 并发取出时只有一个线程能移除成功
+                if (bucket.remove(localCacheValue)) {
+                    return localCacheValue;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 内存占用最大的前n个值，从大到小排序
+     * 从最高的非空桶开始取，取够n个的桶遍历完后不再遍历更低的桶
+     *
+     * @param n
+     * @return
+     */
+    public List<LocalCacheValue> topN(int n) {
+        Comparator<LocalCacheValue> comparator = Comparator.comparingLong(LocalCacheSizeUtil::getEntryByteSize);
+        // 小顶堆保留最大的n个
+        PriorityQueue<LocalCacheValue> heap = new PriorityQueue<>(Math.max(n, 1), comparator);
+        for (int i = BUCKET_COUNT - 1; i >= 0 && heap.size() < n; i--) {
+            for (LocalCacheValue localCacheValue : buckets[i]) {
+                heap.offer(localCacheValue);
+                if (heap.size() > n) {
+                    heap.poll();
+                }
+            }
+        }
+        List<LocalCacheValue> top = new ArrayList<>(heap);
+        top.sort(comparator.reversed());
+        return top;
+    }
+
+    /**
+     * 索引中值的个数
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Set<LocalCacheValue> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    /**
+     * 内存占用所在的桶
+     *
+     * @param byteSize
+     * @return
+     */
+    private static int bucketOf(long byteSize) {
+        return BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(byteSize);
+    }
+}
@@ -1,58 +1,247 @@
 package cn.humorchen.localcache;
 
 import cn.hutool.core.io.unit.DataSizeUtil;
+import cn.hutool.core.lang.Assert;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.humorchen.localcache.aspect.LocalCacheAspect;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
+import cn.humorchen.localcache.interfaces.ILocalCacheSizeEstimator;
+import cn.humorchen.localcache.interfaces.Impl.InstrumentationSizeEstimator;
+import cn.humorchen.localcache.interfaces.Impl.JsonLengthSizeEstimator;
+import cn.humorchen.localcache.interfaces.Impl.ReflectiveSizeEstimator;
 import com.alibaba.fastjson.JSONObject;
 import com.github.benmanes.caffeine.cache.Cache;
 import lombok.extern.slf4j.Slf4j;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author  humorchen
  * date: 2023/12/29
  * description: 本地缓存容量计算工具
+ * 缓存值的内存占用由可替换的估算器（默认对象图遍历）在写入时计算一次
+ * 方法缓存的内存占用按缓存和全局两级用LongAdder增量维护（写入时累加，移除监听器扣减），读取为O(1)，并定时全量重算兜底
  **/
 @Component
 @Slf4j
 public class LocalCacheSizeUtil {
-    public static final String CACHE_SIZE_CACHE_NAME = "LocalCacheSizeUtilCache";
     public static final String SIZE_PARSE_CACHE_NAME = "LocalCacheSizeUtilSizeParseCache";
+    /**
+     * 所有方法缓存的内存占用（字节），写入、替换、移除时增量更新
+     */
+    private static final LongAdder ALL_METHOD_CACHE_BYTE_SIZE = new LongAdder();
+    /**
+     * 缓存值内存占用估算器，加载了LocalCacheSizeAgent时使用精确的Instrumentation估算
+     */
+    private static volatile ILocalCacheSizeEstimator sizeEstimator = LocalCacheSizeAgent.getInstrumentation() != null ? new InstrumentationSizeEstimator(LocalCacheSizeAgent.getInstrumentation()) : ReflectiveSizeEstimator.INSTANCE;
+
+    /**
+     * 获取缓存值内存占用估算器
+     *
+     * @return
+     */
+    public static ILocalCacheSizeEstimator getSizeEstimator() {
+        return sizeEstimator;
+    }
+
+    /**
+     * 设置缓存值内存占用估算器
+     *
+     * @param sizeEstimator
+     */
+    public static void setSizeEstimator(ILocalCacheSizeEstimator sizeEstimator) {
+        Assert.notNull(sizeEstimator, "sizeEstimator不得为空");
+        LocalCacheSizeUtil.sizeEstimator = sizeEstimator;
+    }
+
+    /**
+     * 估算缓存值的内存占用（字节），估算失败时退化为json长度
+     *
+     * @param object
+     * @return
+     */
+    public static long estimateSize(Object object) {
+        try {
+            return sizeEstimator.estimate(object);
+        } catch (Exception e) {
+            log.error("本地缓存 估算内存占用失败，退化为按json长度计算，类型：{}", object.getClass().getName(), e);
+            return JsonLengthSizeEstimator.INSTANCE.estimate(object);
+        }
+    }
+
     /**
      * 计算缓存容量
-     * 100ms后刷新的，保障100ms以内最多计算一次
+     * 读取增量维护的计数，O(1)
      *
      * @param methodCacheName
      * @return
      */
-    @LocalCache(cacheName = CACHE_SIZE_CACHE_NAME, initCapacity = 8, maxCapacity = 256, expireAfterWrite = 1000 * 60 * 60 * 24, refreshAfterWrite = 100, timeUnit = TimeUnit.MILLISECONDS, skipGlobalMemoryLimit = true)
     public long getMethodCacheByteSize(String methodCacheName) {
+        MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(methodCacheName);
+        if (plan != null) {
+            return plan.getUsedByteSize().sum();
+        }
         return getMethodCacheByteSize(LocalCacheContext.getMethodCache(methodCacheName));
     }
 
+    /**
+     * 计算缓存容量
+     * 有执行计划的读取增量维护的计数，否则全量遍历
+     *
+     * @param cache
+     * @return
+     */
+    public static long getMethodCacheUsedByteSize(Cache<LocalCacheKey, LocalCacheValue> cache) {
+        MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(LocalCacheContext.getCacheName(cache));
+        if (plan != null) {
+            return plan.getUsedByteSize().sum();
+        }
+        return getMethodCacheByteSize(cache);
+    }
+
+    /**
+     * 所有方法缓存的内存占用（字节），O(1)
+     *
+     * @return
+     */
+    public static long getAllMethodCacheByteSize() {
+        return ALL_METHOD_CACHE_BYTE_SIZE.sum();
+    }
+
+    /**
+     * 单个缓存值的内存占用（字节），负缓存不计入
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public static long getEntryByteSize(LocalCacheValue localCacheValue) {
+        if (localCacheValue == null || localCacheValue.isNegative()) {
+            return 0;
+        }
+        // key参数按估算长度计算，java 1字符等于2字节
+        return localCacheValue.getKey().getArgsLength() * 2L + localCacheValue.getByteSize();
+    }
+
+    /**
+     * 缓存值写入后累加内存占用（替换时旧值由移除监听器扣减）
+     *
+     * @param localCacheValue
+     */
+    public static void onPut(LocalCacheValue localCacheValue) {
+        addByteSize(localCacheValue, getEntryByteSize(localCacheValue));
+        LocalCacheSizeIndex sizeIndex = getSizeIndex(localCacheValue);
+        if (sizeIndex != null) {
+            sizeIndex.add(localCacheValue);
+            // 写入后处理晚于移除时，移除监听器已执行过，这里撤回
+            if (localCacheValue.isRemoved()) {
+                sizeIndex.remove(localCacheValue);
+            }
+        }
+    }
+
+    /**
+     * 缓存值被移除（包括替换、过期、淘汰、手动失效）后扣减内存占用
+     *
+     * @param localCacheValue
+     */
+    public static void onRemoval(LocalCacheValue localCacheValue) {
+        localCacheValue.markRemoved();
+        addByteSize(localCacheValue, -getEntryByteSize(localCacheValue));
+        LocalCacheSizeIndex sizeIndex = getSizeIndex(localCacheValue);
+        if (sizeIndex != null) {
+            sizeIndex.remove(localCacheValue);
+        }
+    }
+
+    /**
+     * 缓存值所在方法缓存的大小索引，未维护索引时为空
+     *
+     * @param localCacheValue
+     * @return
+     */
+    private static LocalCacheSizeIndex getSizeIndex(LocalCacheValue localCacheValue) {
+        MethodCachePlan plan = localCacheValue.getKey().getPlan();
+        return plan != null ? plan.getSizeIndex() : null;
+    }
+
+    /**
+     * 累加方法缓存和全局的内存占用
+     *
+     * @param localCacheValue
+     * @param byteSize
+     */
+    private static void addByteSize(LocalCacheValue localCacheValue, long byteSize) {
+        if (byteSize == 0) {
+            return;
+        }
+        MethodCachePlan plan = localCacheValue.getKey().getPlan();
+        if (plan != null) {
+            plan.getUsedByteSize().add(byteSize);
+            ALL_METHOD_CACHE_BYTE_SIZE.add(byteSize);
+        }
+    }
+
+    /**
+     * 定时全量重算一次内存占用，修正增量计数的偏差（例如自动刷新加载的值没有被写入缓存）
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000, initialDelay = 10 * 60 * 1000)
+    public void recount() {
+        LocalCacheAspect.cacheMap.forEach((cacheName, cache) -> {
+            MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(cacheName);
+            if (plan != null) {
+                long delta = getMethodCacheByteSize(cache) - plan.getUsedByteSize().sum();
+                if (delta != 0) {
+                    plan.getUsedByteSize().add(delta);
+                    ALL_METHOD_CACHE_BYTE_SIZE.add(delta);
+                    LocalCacheLogger.debug(null, "本地缓存：{} 内存占用重算，修正 {} 字节", cacheName, delta);
+                }
+            }
+        });
+    }
+
     /**
      * str的容量大小转化为long字节
-     * 例如 "1KB" 转化为 1024
+     * 例如 "1KB" 转化为 1024，"15%" 转化为 最大堆内存×0.15
      *
      * @param str
      * @return
      */
     @LocalCache(cacheName = SIZE_PARSE_CACHE_NAME, initCapacity = 16, maxCapacity = 1024, expireAfterWrite = 60 * 60 * 24 * 365, skipGlobalMemoryLimit = true)
     public long parseSizeStr(String str) {
-        if (StrUtil.isNotBlank(str)) {
-            return DataSizeUtil.parse(str);
+        return parseByteSize(str);
+    }
+
+    /**
+     * 容量字符串转化为字节，支持按最大堆内存的百分比配置
+     * 例如 "1KB" 转化为 1024，"15%" 转化为 最大堆内存×0.15
+     *
+     * @param str
+     * @return 空字符串为0
+     */
+    public static long parseByteSize(String str) {
+        if (StrUtil.isBlank(str)) {
+            return 0;
         }
-        return 0;
+        String trimmed = str.trim();
+        if (trimmed.endsWith("%")) {
+            double percent = Double.parseDouble(trimmed.substring(0, trimmed.length() - 1).trim());
+            return (long) (Runtime.getRuntime().maxMemory() * percent / 100);
+        }
+        return DataSizeUtil.parse(trimmed);
     }
     /**
-     * 获取方法缓存大小
+     * 全量遍历计算方法缓存大小
      *
      * @param cache
      * @return
@@ -61,12 +250,33 @@ public class LocalCacheSizeUtil {
         long byteSum = 0;
         if (cache != null) {
             ConcurrentMap<@NonNull LocalCacheKey, @NonNull LocalCacheValue> map = cache.asMap();
-            // Key args长度、value长度
-            byteSum += map.keySet().stream().mapToInt(LocalCacheKey::getArgsJSONLength).sum();
-            byteSum += map.values().stream().mapToInt(LocalCacheValue::getJsonLength).sum();
+            // Key args长度、value长度，负缓存（null、空返回值）不计入
+            for (LocalCacheValue value : map.values()) {
+                byteSum += getEntryByteSize(value);
+            }
+        }
+        return byteSum;
+    }
+
+    /**
+     * 按返回值类型统计方法缓存的内存占用（字节），从大到小排序
+     * 需遍历缓存，只用于监控打印
+     *
+     * @param cache
+     * @return
+     */
+    public static Map<String, Long> getMethodCacheByteSizeByValueClass(Cache<LocalCacheKey, LocalCacheValue> cache) {
+        Map<String, Long> byteSizeMap = new HashMap<>();
+        if (cache != null) {
+            for (LocalCacheValue value : cache.asMap().values()) {
+                if (value.getValueClass() != null) {
+                    byteSizeMap.merge(value.getValueClass().getName(), getEntryByteSize(value), Long::sum);
+                }
+            }
         }
-        // java 1字符等于2字节
-        return byteSum * 2L;
+        Map<String, Long> sortedMap = new LinkedHashMap<>(byteSizeMap.size() * 4 / 3 + 1);
+        byteSizeMap.entrySet().stream().sorted(Map.Entry.<String, Long>comparingByValue().reversed()).forEach(entry -> sortedMap.put(entry.getKey(), entry.getValue()));
+        return sortedMap;
     }
 
     /**
@@ -82,7 +292,7 @@ public class LocalCacheSizeUtil {
                 Collection<@NonNull Object> values = map.values();
                 Object object = values.stream().findFirst().orElse(null);
                 if (object instanceof LocalCacheValue) {
-                    return values.stream().mapToInt(o -> ((LocalCacheValue) o).getJsonLength()).sum() * 2L;
+                    return values.stream().mapToLong(o -> ((LocalCacheValue) o).getByteSize()).sum();
                 } else {
                     return values.stream().mapToInt(o -> JSONObject.toJSONString(o).length()).sum() * 2L;
                 }
@@ -1,24 +1,30 @@
 package cn.humorchen.localcache;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.io.unit.DataSize;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import cn.humorchen.localcache.enums.CopyResultStrategy;
+import cn.humorchen.localcache.enums.ValueStrengthEnum;
 import com.github.benmanes.caffeine.cache.*;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author  humorchen
  * date: 2023/11/21
  * description: Caffeine本地缓存创建工具，建议使用该工具进行缓存对象构建
  * 使用该工具类，内部提供默认参数，可内存安全、线程安全的创建caffeine
+ * 未指定线程池时所有缓存共用刷新线程池（LocalCacheExecutors），不再每个缓存各建一个
  **/
 @Setter
 @Accessors(chain = true)
@@ -40,10 +46,6 @@ public class LocalCacheUtil<K, V> {
      */
     private final TimeUnit DEFAULT_THREAD_KEEP_ALIVE_TIMEUNIT = TimeUnit.MINUTES;
 
-    /**
-     * 线程池拒绝策略 默认值
-     */
-    private final RejectedExecutionHandler DEFAULT_THREAD_EXECUTOR_ABORT_POLICY = new ThreadPoolExecutor.AbortPolicy();
     /**
      * 初始化缓存容量默认值
      */
@@ -72,31 +74,38 @@ public class LocalCacheUtil<K, V> {
      * Caffeine缓存名称，用于做线程名，打印等
      */
     private String cacheName;
-    /**
-     * 线程计数
-     */
-    private AtomicInteger threadNum = new AtomicInteger(0);
-
     /**
      * 线程池初始线程数
+     *
+     * @deprecated 已改为共用刷新线程池，线程数由全局配置threadPoolCoreThreadSize决定
      */
+    @Deprecated
     private int thread = DEFAULT_THREAD;
     /**
      * 线程池最大线程数
+     *
+     * @deprecated 已改为共用刷新线程池，线程数由全局配置threadPoolMaxThreadSize决定，单个缓存的刷新并发用refreshBulkhead限制
      */
+    @Deprecated
     private int maxThread = DEFAULT_MAX_THREAD;
     /**
      * 线程池额外线程数存活时间
+     *
+     * @deprecated 已改为共用刷新线程池
      */
+    @Deprecated
     private int threadKeepAlive = DEFAULT_THREAD_KEEP_ALIVE;
     /**
      * 线程池额外线程数存活时间单位
+     *
+     * @deprecated 已改为共用刷新线程池
      */
+    @Deprecated
     private TimeUnit threadKeepAliveTimeunit = DEFAULT_THREAD_KEEP_ALIVE_TIMEUNIT;
     /**
-     * 线程池拒绝策略
+     * 同时执行的刷新任务数上限（舱壁），为空时使用全局配置refreshBulkhead
      */
-    private final RejectedExecutionHandler threadExecutorAbortPolicy = DEFAULT_THREAD_EXECUTOR_ABORT_POLICY;
+    private Integer refreshBulkhead;
     /**
      * 初始化缓存容量
      */
@@ -107,8 +116,10 @@ public class LocalCacheUtil<K, V> {
     private int maxCapacity = DEFAULT_MAX_CAPACITY;
     /**
      * 线程池等待队列的容量
+     *
+     * @deprecated 已改为共用刷新线程池，队列长度由全局配置threadPoolQueueSize决定
      */
-
+    @Deprecated
     private int blockingQueueSize = DEFAULT_BLOCKING_QUEUE_SIZE;
     /**
      * 缓存写入后n秒过期
@@ -126,6 +137,18 @@ public class LocalCacheUtil<K, V> {
      * 缓存时间单位
      */
     private TimeUnit timeUnit = DEFAULT_TIME_UNIT;
+    /**
+     * 按条目计算过期时间，设置后替代expireAfterWrite、expireAfterAccess生效
+     */
+    private Expiry<? super K, ? super V> expiry;
+    /**
+     * 按权重限制容量（例如按内存占用），设置后替代maxCapacity的maximumSize
+     */
+    private Long maximumWeight;
+    /**
+     * 权重计算器，与maximumWeight一起设置
+     */
+    private Weigher<? super K, ? super V> weigher;
     /**
      * 移除key的监听器
      */
@@ -157,13 +180,16 @@ public class LocalCacheUtil<K, V> {
 
     /**
      * 新建一个caffeine缓存构建器
+     * 不指定键值类型时为Object，指定后（LocalCacheUtil.&lt;K, V&gt;newCacheBuilder）可设置对应类型的weigher、expiry
      *
      * @param cacheName 缓存名称（用于线程名，日志打印）
      * @return
      */
-    public static LocalCacheUtil<Object, Object> newCacheBuilder(String cacheName) {
-        LocalCacheUtil<Object, Object> builder = new LocalCacheUtil<>(cacheName);
-        builder.sourceCaffeineBuilder = Caffeine.newBuilder();
+    @SuppressWarnings("unchecked")
+    public static <K, V> LocalCacheUtil<K, V> newCacheBuilder(String cacheName) {
+        LocalCacheUtil<K, V> builder = new LocalCacheUtil<>(cacheName);
+        // caffeine builder在设置泛型相关配置前不区分键值类型（caffeine自身的weigher、removalListener也是这样转换的）
+        builder.sourceCaffeineBuilder = (Caffeine<K, V>) (Caffeine<?, ?>) Caffeine.newBuilder();
         return builder;
     }
 
@@ -209,7 +235,7 @@ public class LocalCacheUtil<K, V> {
     }
 
     /**
-     * 简单数据的缓存，待自动刷新
+     * 简单数据的缓存，待自动刷新，同时最多4个刷新任务
      *
      * @param initCapacity
      * @param maxCapacity
@@ -219,9 +245,7 @@ public class LocalCacheUtil<K, V> {
      */
     public LocalCacheUtil<K, V> basicAutoRefreshCacheConfigWithSingleExecutor(int initCapacity, int maxCapacity, int expireSecond, int refreshAfterWrite) {
         LocalCacheUtil<K, V> util = this.basicAutoRefreshCacheConfig(initCapacity, maxCapacity, expireSecond, refreshAfterWrite);
-        util.setThread(1);
-        util.setMaxThread(4);
-        util.setBlockingQueueSize(16);
+        util.setRefreshBulkhead(4);
         return util;
     }
 
@@ -240,29 +264,93 @@ public class LocalCacheUtil<K, V> {
      * @return Cache
      */
     public <K1 extends K, V1 extends V> Cache<K1, V1> build(CacheLoader<K1, V1> cacheLoader) {
-        Caffeine<K, V> caffeine = this.sourceCaffeineBuilder.initialCapacity(initCapacity).maximumSize(maxCapacity);
+        Caffeine<K, V> caffeine = prepareCaffeine(cacheLoader != null);
+        if (cacheLoader != null && executor == null) {
+            // 刷新走共用刷新线程池：同一个key去重、按舱壁限制并发，满了跳过本次刷新
+            int bulkhead = refreshBulkhead != null && refreshBulkhead > 0 ? refreshBulkhead : LocalCacheExecutors.defaultRefreshBulkhead();
+            cacheLoader = new LocalCacheRefreshLoader<>(cacheLoader, cacheName, bulkhead, expiry instanceof LocalCacheValueExpiry);
+        }
+        Cache cache = cacheLoader == null ? caffeine.build() : caffeine.build(cacheLoader);
+        // 注册到监控
+        LocalCache localCache = this.localCache != null ? this.localCache : config2LocalCache();
+        LocalCacheContext.register(this.cacheName, cache, localCache);
+        return cache;
+    }
+
+    /**
+     * 构建不带加载器的异步缓存
+     * 值为CompletableFuture，并发获取同一个key共享同一个加载中的future，异常完成的future不会被缓存
+     *
+     * @return
+     * @param <K1>
+     * @param <V1>
+     */
+    public <K1 extends K, V1 extends V> AsyncCache<K1, V1> buildAsync() {
+        return this.buildAsync(null);
+    }
+
+    /**
+     * 构建异步缓存，异步刷新时直接使用加载器返回的future，不阻塞线程池线程
+     *
+     * @param cacheLoader
+     * @return
+     * @param <K1>
+     * @param <V1>
+     */
+    public <K1 extends K, V1 extends V> AsyncCache<K1, V1> buildAsync(AsyncCacheLoader<K1, V1> cacheLoader) {
+        Caffeine<K, V> caffeine = prepareCaffeine(cacheLoader != null);
+        AsyncCache<K1, V1> asyncCache = cacheLoader == null ? caffeine.buildAsync() : caffeine.buildAsync(cacheLoader);
+        // 注册同步视图到监控，可被统计、清理
+        LocalCache localCache = this.localCache != null ? this.localCache : config2LocalCache();
+        LocalCacheContext.register(this.cacheName, asyncCache.synchronous(), localCache);
+        return asyncCache;
+    }
+
+    /**
+     * 按当前配置准备caffeine builder
+     *
+     * @param hasCacheLoader 是否提供了加载器
+     * @return
+     */
+    private Caffeine<K, V> prepareCaffeine(boolean hasCacheLoader) {
+        Caffeine<K, V> caffeine = this.sourceCaffeineBuilder.initialCapacity(initCapacity);
+        // 按权重或个数限制容量（caffeine不允许同时设置）
+        if (maximumWeight != null && maximumWeight > 0) {
+            Assert.notNull(weigher, () -> new IllegalArgumentException("设置maximumWeight必须提供weigher"));
+            caffeine.maximumWeight(maximumWeight).weigher(weigher);
+        } else {
+            caffeine.maximumSize(maxCapacity);
+        }
         // 必须设置过期时间
-        Assert.isFalse(expireAfterAccess == null && expireAfterWrite == null, () -> new IllegalArgumentException("expireAfterAccess和expireAfterWrite必须设置一个"));
+        Assert.isFalse(expireAfterAccess == null && expireAfterWrite == null && expiry == null, () -> new IllegalArgumentException("expireAfterAccess、expireAfterWrite和expiry必须设置一个"));
         int expireSecond = 1;
         // 写入后多久过期
         if (expireAfterWrite != null) {
-            caffeine.expireAfterWrite(expireAfterWrite, timeUnit);
+            if (expiry == null) {
+                caffeine.expireAfterWrite(expireAfterWrite, timeUnit);
+            }
             expireSecond = expireAfterWrite;
         }
         // 最后一次访问多久后过期
         if (expireAfterAccess != null) {
-            caffeine.expireAfterAccess(expireAfterAccess, timeUnit);
+            if (expiry == null) {
+                caffeine.expireAfterAccess(expireAfterAccess, timeUnit);
+            }
             expireSecond = expireAfterAccess;
         }
+        // 按条目计算过期时间（caffeine不允许与expireAfterWrite、expireAfterAccess同时设置）
+        if (expiry != null) {
+            caffeine.expireAfter(expiry);
+        }
         // 填充默认过期时间值并检查值
-        if (cacheLoader != null && refreshAfterWrite == null) {
+        if (hasCacheLoader && refreshAfterWrite == null) {
             refreshAfterWrite = Math.max(expireSecond / 2, 1);
             Assert.isTrue(refreshAfterWrite < expireSecond, () -> new IllegalArgumentException("使用默认方案时过期时间请大于1秒"));
             setRefreshAfterWrite(refreshAfterWrite);
         }
         // 自动刷新缓存最新值
         if (refreshAfterWrite != null) {
-            Assert.notNull(cacheLoader, () -> new IllegalArgumentException("使用自动刷新必须提供加载器cacheLoader"));
+            Assert.isTrue(hasCacheLoader, () -> new IllegalArgumentException("使用自动刷新必须提供加载器cacheLoader"));
             caffeine.refreshAfterWrite(refreshAfterWrite, timeUnit);
         }
         // 调度器
@@ -273,24 +361,11 @@ public class LocalCacheUtil<K, V> {
         if (removalListener != null) {
             caffeine.removalListener(removalListener);
         }
-        // 线程池
-        if (executor != null) {
-            caffeine.executor(executor);
-        } else {
-            ThreadFactory threadFactory = (runnable) -> {
-                String cacheName = "【本地缓存线程】" + this.cacheName + "-" + threadNum.incrementAndGet();
-                return new Thread(runnable, cacheName);
-            };
-            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(thread, maxThread, threadKeepAlive, threadKeepAliveTimeunit, new LinkedBlockingDeque<>(blockingQueueSize), threadFactory, threadExecutorAbortPolicy);
-            caffeine.executor(threadPoolExecutor);
-        }
+        // 线程池，未指定时共用刷新线程池
+        caffeine.executor(executor != null ? executor : LocalCacheExecutors.caffeineExecutor());
         // 启用记录缓存命中等状态计数信息
         caffeine.recordStats();
-        Cache cache = cacheLoader == null ? caffeine.build() : caffeine.build(cacheLoader);
-        // 注册到监控
-        LocalCache localCache = this.localCache != null ? this.localCache : config2LocalCache();
-        LocalCacheContext.register(this.cacheName, cache, localCache);
-        return cache;
+        return caffeine;
     }
 
 
@@ -429,6 +504,39 @@ public class LocalCacheUtil<K, V> {
                 return false;
             }
 
+            /**
+             * 全局内存限制下的优先级（权重）
+             *
+             * @return
+             */
+            @Override
+            public int priority() {
+                return 1;
+            }
+
+            /**
+             * 全局内存限制下保留的最小内存
+             * 默认空字符串代表 不保留
+             *
+             * @return
+             * @see DataSize
+             */
+            @Override
+            public String minReservedMemory() {
+                return "";
+            }
+
+            /**
+             * 缓存值的引用强度
+             * 默认软引用
+             *
+             * @return
+             */
+            @Override
+            public ValueStrengthEnum valueStrength() {
+                return ValueStrengthEnum.SOFT;
+            }
+
             /**
              * 是否拷贝返回值
              * 用于解决返回值是引用类型，缓存值被修改的问题
@@ -441,6 +549,116 @@ public class LocalCacheUtil<K, V> {
             public CopyResultStrategy copyResultStrategy() {
                 return CopyResultStrategy.NONE;
             }
+
+            /**
+             * 是否合并并发加载
+             *
+             * @return
+             */
+            @Override
+            public boolean singleFlight() {
+                return false;
+            }
+
+            /**
+             * 合并加载时等待其他线程加载结果的最长毫秒数
+             *
+             * @return
+             */
+            @Override
+            public long singleFlightWaitMillis() {
+                return -1;
+            }
+
+            /**
+             * 是否缓存null返回值
+             *
+             * @return
+             */
+            @Override
+            public boolean cacheNull() {
+                return false;
+            }
+
+            /**
+             * null返回值的缓存有效时间
+             *
+             * @return
+             */
+            @Override
+            public int nullExpireAfterWrite() {
+                return -1;
+            }
+
+            /**
+             * 是否把空返回值当作null返回值处理
+             *
+             * @return
+             */
+            @Override
+            public boolean cacheEmpty() {
+                return false;
+            }
+
+            /**
+             * 过期后继续返回旧值并异步刷新的时间窗口
+             *
+             * @return
+             */
+            @Override
+            public int staleWhileRevalidateFor() {
+                return 0;
+            }
+
+            /**
+             * 过期后加载报错时返回旧值的时间窗口
+             *
+             * @return
+             */
+            @Override
+            public int staleIfErrorFor() {
+                return 0;
+            }
+
+            /**
+             * 批量方法名
+             *
+             * @return
+             */
+            @Override
+            public String batchLoader() {
+                return "";
+            }
+
+            /**
+             * 合并批量加载的收集时间窗口
+             *
+             * @return
+             */
+            @Override
+            public long batchWindowMillis() {
+                return 2;
+            }
+
+            /**
+             * 合并批量加载一批最多的id数
+             *
+             * @return
+             */
+            @Override
+            public int batchMaxSize() {
+                return 100;
+            }
+
+            /**
+             * 批量方法返回值为List时，从元素中取出id的属性名
+             *
+             * @return
+             */
+            @Override
+            public String batchKeyProperty() {
+                return "";
+            }
         };
     }
 
@@ -490,6 +708,47 @@ public class LocalCacheUtil<K, V> {
     }
 
 
+    /**
+     * 批量方法的返回值按id建立索引
+     * 返回值为Map的直接使用，为集合的按元素的keyProperty属性（字符串形式）建立索引
+     *
+     * @param result      批量方法返回值
+     * @param keyProperty 集合元素中id的属性名
+     * @return
+     */
+    public static Map<?, ?> indexBatchResult(Object result, String keyProperty) {
+        if (result instanceof Map) {
+            return (Map<?, ?>) result;
+        }
+        if (result instanceof Collection && StrUtil.isNotBlank(keyProperty)) {
+            Collection<?> collection = (Collection<?>) result;
+            Map<String, Object> index = new HashMap<>(collection.size() * 4 / 3 + 1);
+            for (Object element : collection) {
+                if (element != null) {
+                    Object id = BeanUtil.getProperty(element, keyProperty);
+                    index.put(String.valueOf(id), element);
+                }
+            }
+            return index;
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 从批量方法返回值的索引中取id对应的值，找不到时按id的字符串形式再找一次
+     *
+     * @param index
+     * @param id
+     * @return
+     */
+    public static Object getBatchResult(Map<?, ?> index, Object id) {
+        Object value = index.get(id);
+        if (value == null && id != null && !(id instanceof String)) {
+            value = index.get(String.valueOf(id));
+        }
+        return value;
+    }
+
     /**
      * 清理某个方法的缓存
      *
@@ -0,0 +1,118 @@
+package cn.humorchen.localcache;
+
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/9
+ * description: 方法缓存按条目计算的过期时间
+ * 负缓存（null返回值、空返回值）使用nullExpireAfterWrite，其他值使用expireAfterWrite，均为写入后过期，读取不续期
+ * 开启了过期后返回旧值（staleWhileRevalidateFor、staleIfErrorFor）时，缓存里实际保留的时间再加上两者中较大的窗口，
+ * 值是否过期由切面按值上记录的逻辑过期时间判断
+ * 有效时间从值的写入时间（LocalCacheValue#writeNanos）算起，同一个值被重新写入（例如刷新被跳过时以旧值完成）不会续期
+ **/
+public class LocalCacheValueExpiry implements Expiry<LocalCacheKey, LocalCacheValue> {
+    /**
+     * 普通值的有效时间（纳秒）
+     */
+    private final long expireNanos;
+    /**
+     * 负缓存的有效时间（纳秒）
+     */
+    private final long negativeExpireNanos;
+    /**
+     * 过期后继续保留的时间（纳秒）
+     */
+    private final long staleNanos;
+
+    public LocalCacheValueExpiry(long expireNanos, long negativeExpireNanos, long staleNanos) {
+        this.expireNanos = expireNanos;
+        this.negativeExpireNanos = negativeExpireNanos;
+        this.staleNanos = staleNanos;
+    }
+
+    /**
+     * 根据注解创建，未开启负缓存、过期旧值窗口和自动刷新的返回null（使用固定的expireAfterWrite即可）
+     *
+     * @param localCache
+     * @return
+     */
+    public static LocalCacheValueExpiry of(LocalCache localCache) {
+        if (localCache == null) {
+            return null;
+        }
+        long staleNanos = staleNanos(localCache);
+        if (!(localCache.cacheNull() || localCache.cacheEmpty() || staleNanos > 0 || localCache.refreshAfterWrite() > 0)) {
+            return null;
+        }
+        return new LocalCacheValueExpiry(expireNanos(localCache), negativeExpireNanos(localCache), staleNanos);
+    }
+
+    /**
+     * 普通值的有效时间（纳秒）
+     *
+     * @param localCache
+     * @return
+     */
+    public static long expireNanos(LocalCache localCache) {
+        return localCache.timeUnit().toNanos(localCache.expireAfterWrite());
+    }
+
+    /**
+     * 负缓存的有效时间（纳秒）
+     *
+     * @param localCache
+     * @return
+     */
+    public static long negativeExpireNanos(LocalCache localCache) {
+        return localCache.nullExpireAfterWrite() > 0 ? localCache.timeUnit().toNanos(localCache.nullExpireAfterWrite()) : expireNanos(localCache);
+    }
+
+    /**
+     * 过期后继续保留的时间（纳秒）
+     *
+     * @param localCache
+     * @return
+     */
+    public static long staleNanos(LocalCache localCache) {
+        return localCache.timeUnit().toNanos(Math.max(Math.max(localCache.staleWhileRevalidateFor(), localCache.staleIfErrorFor()), 0));
+    }
+
+    /**
+     * 写入后的有效时间
+     *
+     * @param value
+     * @return
+     */
+    private long expireAfterWrite(LocalCacheValue value) {
+        return (value.isNegative() ? negativeExpireNanos : expireNanos) + staleNanos;
+    }
+
+    /**
+     * 值剩余的有效时间，从值的写入时间算起
+     *
+     * @param value
+     * @param currentTime
+     * @return
+     */
+    private long remaining(LocalCacheValue value, long currentTime) {
+        return Math.max(expireAfterWrite(value) - Math.max(currentTime - value.getWriteNanos(), 0), 0);
+    }
+
+    @Override
+    public long expireAfterCreate(LocalCacheKey key, LocalCacheValue value, long currentTime) {
+        return remaining(value, currentTime);
+    }
+
+    @Override
+    public long expireAfterUpdate(LocalCacheKey key, LocalCacheValue value, long currentTime, long currentDuration) {
+        return remaining(value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(LocalCacheKey key, LocalCacheValue value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
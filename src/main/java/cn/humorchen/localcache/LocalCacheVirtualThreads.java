@@ -0,0 +1,30 @@
+package cn.humorchen.localcache;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/23
+ * description: 虚拟线程支持
+ * 这是JDK8的版本，不支持虚拟线程；JDK21的版本在 src/main/java21，打包到多版本jar的 META-INF/versions/21 下，JDK21及以上运行时自动替换本类
+ **/
+public class LocalCacheVirtualThreads {
+    /**
+     * 当前运行环境是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     *
+     * @param namePrefix 线程名前缀，后面拼序号
+     * @return
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("当前运行环境不支持虚拟线程");
+    }
+}
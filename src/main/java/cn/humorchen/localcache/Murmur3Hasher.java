@@ -0,0 +1,217 @@
+package cn.humorchen.localcache;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/4
+ * description: 流式的 Murmur3 x64 128位 哈希器（非加密）
+ * 数据直接写入两个64位块中，不需要先拼接字符串或字节数组，用于方法缓存key的指纹计算
+ * 非线程安全，每次计算请使用独立的实例或先调用reset
+ **/
+public final class Murmur3Hasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432e5cab7fL;
+    /**
+     * 哈希状态
+     */
+    private long h1;
+    private long h2;
+    /**
+     * 当前块的前8字节和后8字节
+     */
+    private long k1;
+    private long k2;
+    /**
+     * 当前块已写入的字节数（0-15）
+     */
+    private int bufferLength;
+    /**
+     * 总写入字节数
+     */
+    private long totalLength;
+
+    /**
+     * 重置状态以便复用
+     *
+     * @return
+     */
+    public Murmur3Hasher reset() {
+        h1 = 0;
+        h2 = 0;
+        k1 = 0;
+        k2 = 0;
+        bufferLength = 0;
+        totalLength = 0;
+        return this;
+    }
+
+    public Murmur3Hasher putByte(int b) {
+        putAligned(b & 0xFFL, 1);
+        return this;
+    }
+
+    public Murmur3Hasher putBoolean(boolean b) {
+        return putByte(b ? 1 : 0);
+    }
+
+    public Murmur3Hasher putChar(char c) {
+        if ((bufferLength & 1) == 0) {
+            putAligned(c & 0xFFFFL, 2);
+        } else {
+            putByte(c);
+            putByte(c >>> 8);
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putShort(short s) {
+        return putChar((char) s);
+    }
+
+    public Murmur3Hasher putInt(int i) {
+        if ((bufferLength & 3) == 0) {
+            putAligned(i & 0xFFFFFFFFL, 4);
+        } else {
+            for (int shift = 0; shift < 32; shift += 8) {
+                putByte(i >>> shift);
+            }
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putLong(long l) {
+        if ((bufferLength & 7) == 0) {
+            putAligned(l, 8);
+        } else {
+            for (int shift = 0; shift < 64; shift += 8) {
+                putByte((int) (l >>> shift));
+            }
+        }
+        return this;
+    }
+
+    public Murmur3Hasher putFloat(float f) {
+        return putInt(Float.floatToIntBits(f));
+    }
+
+    public Murmur3Hasher putDouble(double d) {
+        return putLong(Double.doubleToLongBits(d));
+    }
+
+    /**
+     * 写入字符序列，先写长度再逐字符写入，不产生中间对象
+     *
+     * @param chars
+     * @return
+     */
+    public Murmur3Hasher putChars(CharSequence chars) {
+        int length = chars.length();
+        putInt(length);
+        for (int i = 0; i < length; i++) {
+            putChar(chars.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * 计算结束，之后可通过getHigh、getLow获取结果
+     *
+     * @return
+     */
+    public Murmur3Hasher finish() {
+        if (bufferLength > 8) {
+            long k = k2 * C2;
+            k = Long.rotateLeft(k, 33);
+            k *= C1;
+            h2 ^= k;
+        }
+        if (bufferLength > 0) {
+            long k = k1 * C1;
+            k = Long.rotateLeft(k, 31);
+            k *= C2;
+            h1 ^= k;
+        }
+        h1 ^= totalLength;
+        h2 ^= totalLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        k1 = 0;
+        k2 = 0;
+        bufferLength = 0;
+        return this;
+    }
+
+    /**
+     * 高64位
+     *
+     * @return
+     */
+    public long getHigh() {
+        return h1;
+    }
+
+    /**
+     * 低64位
+     *
+     * @return
+     */
+    public long getLow() {
+        return h2;
+    }
+
+    /**
+     * 写入不跨越8字节边界的数据
+     *
+     * @param value
+     * @param bytes
+     */
+    private void putAligned(long value, int bytes) {
+        if (bufferLength < 8) {
+            k1 |= value << (bufferLength << 3);
+        } else {
+            k2 |= value << ((bufferLength - 8) << 3);
+        }
+        bufferLength += bytes;
+        totalLength += bytes;
+        if (bufferLength == 16) {
+            processBlock();
+        }
+    }
+
+    /**
+     * 处理一个完整的16字节块
+     */
+    private void processBlock() {
+        long k = k1 * C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        h1 ^= k;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        k = k2 * C2;
+        k = Long.rotateLeft(k, 33);
+        k *= C1;
+        h2 ^= k;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+
+        k1 = 0;
+        k2 = 0;
+        bufferLength = 0;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -3,16 +3,32 @@ package cn.humorchen.localcache.aspect;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
 import cn.humorchen.localcache.LocalCache;
+import cn.humorchen.localcache.LocalCacheBatch;
+import cn.humorchen.localcache.LocalCacheByteWeigher;
+import cn.humorchen.localcache.LocalCacheContext;
+import cn.humorchen.localcache.LocalCacheExecutors;
 import cn.humorchen.localcache.LocalCacheLogger;
+import cn.humorchen.localcache.LocalCacheMicroBatcher;
+import cn.humorchen.localcache.LocalCachePostPutPipeline;
+import cn.humorchen.localcache.LocalCacheReferenceDrainer;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.LocalCacheUtil;
+import cn.humorchen.localcache.LocalCacheValueExpiry;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
 import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
 import cn.humorchen.localcache.constant.LocalCacheConstant;
-import cn.humorchen.localcache.enums.CopyResultStrategy;
+import cn.humorchen.localcache.enums.AsyncReturnTypeEnum;
+import cn.humorchen.localcache.enums.CleanStrategyEnum;
+import cn.humorchen.localcache.enums.PostPutOverflowPolicyEnum;
+import cn.humorchen.localcache.interfaces.ILocalCacheKeyEncoder;
 import cn.humorchen.localcache.interfaces.ILocalCachePutValueTrigger;
+import cn.humorchen.localcache.interfaces.ILocalCacheResultCopier;
+import cn.humorchen.localcache.interfaces.ILocalCacheSizeEstimator;
+import cn.humorchen.localcache.interfaces.Impl.Murmur3KeyEncoder;
 import cn.humorchen.localcache.listener.LocalCacheDefaultLogRemovalListener;
-import com.alibaba.fastjson.JSONObject;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import lombok.extern.slf4j.Slf4j;
@@ -26,13 +42,10 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.lang.ref.ReferenceQueue;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author  humorchen
@@ -43,49 +56,59 @@ import java.util.concurrent.locks.ReentrantLock;
 @Component
 @Slf4j
 public class LocalCacheAspect implements DisposableBean {
-    /**
-     * 线程编号
-     */
-    private final AtomicInteger threadNum = new AtomicInteger(0);
-    /**
-     * 共用线程池
-     */
-    private static ThreadPoolExecutor executor = null;
     /**
      * cache容器
      */
     public static final Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = new ConcurrentHashMap<>();
     /**
-     * 初始化锁
+     * 异步返回值方法的cache容器，cacheMap中存放的是它们的同步视图
      */
-    private final ReentrantLock reentrantLock = new ReentrantLock();
+    private static final Map<String, AsyncCache<LocalCacheKey, LocalCacheValue>> asyncCacheMap = new ConcurrentHashMap<>();
     private final LocalCacheGlobalConfig config;
     /**
      * 键移除监听器
      */
     private RemovalListener<Object, Object> removalListener;
+    /**
+     * 方法缓存key的参数编码器
+     */
+    private ILocalCacheKeyEncoder keyEncoder;
+    /**
+     * 方法缓存执行计划，按方法解析一次
+     */
+    private final Map<Method, MethodCachePlan> planMap = new ConcurrentHashMap<>();
+    /**
+     * 方法缓存执行计划的identity快照表（写时复制），命中缓存路径只做引用比较的无锁查找
+     */
+    private volatile Map<Method, MethodCachePlan> planIdentityTable = new IdentityHashMap<>();
     /**
      * 引用队列
      */
     public static ReferenceQueue<Object> valueReferenceQueue = new ReferenceQueue<>();
     /**
-     * put value的钩子
+     * 写入后处理流水线（内存统计、put value的钩子）
+     */
+    private static LocalCachePostPutPipeline postPutPipeline;
+    /**
+     * 被gc回收的缓存值的回收线程
      */
-    private List<ILocalCachePutValueTrigger> localCachePutValueTriggers;
+    private static LocalCacheReferenceDrainer referenceDrainer;
 
     public LocalCacheAspect(LocalCacheGlobalConfig config, List<ILocalCachePutValueTrigger> localCachePutValueTriggers) {
         this.config = config;
-        this.localCachePutValueTriggers = localCachePutValueTriggers;
+        // 共用线程池的配置
+        LocalCacheExecutors.init(config);
+        // 写入后处理流水线，执行put value的钩子
+        if (postPutPipeline == null) {
+            postPutPipeline = new LocalCachePostPutPipeline(localCachePutValueTriggers, !Boolean.FALSE.equals(config.getPostPutAsync()),
+                    config.getPostPutQueueSize() == null ? 4096 : config.getPostPutQueueSize(), PostPutOverflowPolicyEnum.of(config.getPostPutOverflowPolicy()));
+        }
+        // 被gc回收的缓存值立即从缓存移除
+        if (referenceDrainer == null) {
+            referenceDrainer = new LocalCacheReferenceDrainer(valueReferenceQueue);
+        }
         try {
-            LocalCacheLogger.info(null, "本地缓存启动，配置为：{}", JSONObject.toJSONString(config));
-            // 初始化公共线程池
-            if (executor == null) {
-                executor = new ThreadPoolExecutor(config.getThreadPoolCoreThreadSize(), config.getThreadPoolMaxThreadSize(), 10, TimeUnit.MINUTES, new ArrayBlockingQueue<>(config.getThreadPoolQueueSize()), r -> {
-                    String threadName = generateThreadName();
-                    log.info(threadName + " 线程启动");
-                    return new Thread(r, threadName);
-                }, new ThreadPoolExecutor.AbortPolicy());
-            }
+            LocalCacheLogger.info(null, "本地缓存启动，配置为：{}", config);
             // key 移除监听器
             if (removalListener == null) {
                 try {
@@ -105,11 +128,41 @@ public class LocalCacheAspect implements DisposableBean {
                     removalListener = new LocalCacheDefaultLogRemovalListener();
                 }
             }
+            // key 参数编码器
+            try {
+                String keyEncoderClassName = config.getKeyEncoder();
+                if (StrUtil.isNotBlank(keyEncoderClassName)) {
+                    Object object = Class.forName(keyEncoderClassName).newInstance();
+                    if (object instanceof ILocalCacheKeyEncoder) {
+                        keyEncoder = (ILocalCacheKeyEncoder) object;
+                    }
+                }
+            } catch (Exception e) {
+                log.error("本地缓存Key Encoder创建失败，启用默认编码器");
+            }
+            if (keyEncoder == null) {
+                keyEncoder = Murmur3KeyEncoder.INSTANCE;
+            }
+            // 缓存值内存占用估算器
+            try {
+                String sizeEstimatorClassName = config.getSizeEstimator();
+                if (StrUtil.isNotBlank(sizeEstimatorClassName)) {
+                    Object object = Class.forName(sizeEstimatorClassName).newInstance();
+                    if (object instanceof ILocalCacheSizeEstimator) {
+                        LocalCacheSizeUtil.setSizeEstimator((ILocalCacheSizeEstimator) object);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("本地缓存Size Estimator创建失败，启用默认估算器");
+            }
             // 初始化日志配置
             LocalCacheLogger.setEnableLog(config.getEnableLog());
             if (config.getOneLogMaxLength() != null && config.getOneLogMaxLength() > 0) {
                 LocalCacheLogger.setOneLogMaxLength(config.getOneLogMaxLength());
             }
+            if (Boolean.TRUE.equals(config.getAsyncLog())) {
+                LocalCacheLogger.setAsyncLog(true, config.getAsyncLogBufferSize() == null ? 4096 : config.getAsyncLogBufferSize());
+            }
         } catch (Exception e) {
             log.error("初始化报错", e);
             throw e;
@@ -125,73 +178,150 @@ public class LocalCacheAspect implements DisposableBean {
     @Override
     public void destroy() throws Exception {
         // 线程池拒绝新任务并执行完现有任务
-        executor.shutdown();
+        LocalCacheExecutors.shutdown();
     }
 
     /**
-     * 获取方法缓存共用的线程池
+     * 获取方法缓存共用的线程池（刷新线程池，满了在调用线程执行）
      *
      * @return
      */
     public static Executor getMethodCacheExecutor() {
-        return executor;
+        return LocalCacheExecutors.caffeineExecutor();
     }
+
+    /**
+     * 获取写入后处理流水线
+     *
+     * @return
+     */
+    public static LocalCachePostPutPipeline getPostPutPipeline() {
+        return postPutPipeline;
+    }
+
     /**
-     * 生成线程名
+     * 获取被gc回收的缓存值的回收线程
      *
      * @return
      */
-    private String generateThreadName() {
-        return "【" + config.getThreadPoolThreadNamePrefix() + "】thread" + threadNum.incrementAndGet();
+    public static LocalCacheReferenceDrainer getReferenceDrainer() {
+        return referenceDrainer;
     }
     /**
      * 切入点
      */
-    @Pointcut(value = "@annotation(cn.humorchen.localcache.LocalCache)")
+    @Pointcut(value = "@annotation(cn.humorchen.localcache.LocalCache) || @annotation(cn.humorchen.localcache.LocalCacheBatch)")
     public void pointcut() {
 
     }
 
     /**
-     * key是否需要写入到缓存
+     * 获取方法的缓存执行计划，每个方法只解析一次
+     * 先查无锁的identity快照表，未命中再走并发map解析并发布新快照
      *
-     * @param key
-     * @param localCache
-     * @return
+     * @param method
+     * @return 初始化失败返回null
      */
-    private boolean isKeyNeedWriteToCache(LocalCacheKey key, LocalCache localCache) {
-        int globalMax = config.getOneCacheMaxKeyLength() == null ? 0 : config.getOneCacheMaxKeyLength();
-        int annotationMax = localCache != null ? localCache.maxKeyLength() : 0;
-        Assert.isTrue(globalMax >= 0, () -> new IllegalArgumentException("oneCacheMaxKeyLength配置错误，不得为负数"));
-        Assert.isTrue(annotationMax >= 0, () -> new IllegalArgumentException("maxKeyLength配置错误，不得为负数"));
-        if (globalMax > 0 && key.getArgsJSONLength() > globalMax) {
-            return false;
+    private MethodCachePlan getMethodCachePlan(Method method) {
+        MethodCachePlan plan = planIdentityTable.get(method);
+        if (plan == null) {
+            plan = planMap.computeIfAbsent(method, this::createMethodCachePlan);
+            if (plan != null) {
+                synchronized (planMap) {
+                    IdentityHashMap<Method, MethodCachePlan> table = new IdentityHashMap<>(planIdentityTable);
+                    table.put(method, plan);
+                    planIdentityTable = table;
+                }
+            }
         }
-        if (annotationMax > 0 && key.getArgsJSONLength() > annotationMax) {
-            return false;
+        return plan;
+    }
+
+    /**
+     * 启动时预先解析方法的缓存执行计划并创建缓存（检查注解配置），多个方法在启动初始化线程池并行创建
+     * 失败的方法打印错误，第一次调用时会再尝试初始化；最多等待 eagerInitTimeoutMillis，超时未完成的也在第一次调用时初始化
+     *
+     * @param methods 有缓存注解的方法
+     * @return 失败和超时未完成的方法个数
+     */
+    public int prepareMethodCachePlans(Collection<Method> methods) {
+        if (config.getDisabled() || methods.isEmpty()) {
+            return 0;
         }
-        return true;
+        long start = System.currentTimeMillis();
+        AtomicInteger failed = new AtomicInteger();
+        CompletableFuture<?>[] futures = methods.stream().map(method -> CompletableFuture.runAsync(() -> {
+            try {
+                if (getMethodCachePlan(method) == null) {
+                    failed.incrementAndGet();
+                    log.error("本地缓存 方法缓存初始化失败：{}", method);
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("本地缓存 方法缓存配置错误：" + method, e);
+            }
+        }, LocalCacheExecutors.startup())).toArray(CompletableFuture[]::new);
+        long timeoutMillis = config.getEagerInitTimeoutMillis() != null ? config.getEagerInitTimeoutMillis() : 60000L;
+        int unfinished = 0;
+        try {
+            CompletableFuture.allOf(futures).get(Math.max(timeoutMillis, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            unfinished = (int) Arrays.stream(futures).filter(future -> !future.isDone()).count();
+            log.error("本地缓存 启动时初始化方法缓存超时 {}ms，{} 个未完成的方法在第一次调用时初始化", timeoutMillis, unfinished);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unfinished = (int) Arrays.stream(futures).filter(future -> !future.isDone()).count();
+            log.error("本地缓存 启动时初始化方法缓存被中断，{} 个未完成的方法在第一次调用时初始化", unfinished);
+        } catch (ExecutionException e) {
+            log.error("本地缓存 启动时初始化方法缓存报错", e);
+        }
+        LocalCacheLogger.info(null, "本地缓存 启动时初始化方法缓存 {} 个，失败 {} 个，未完成 {} 个，耗时 {}ms", methods.size(), failed.get(), unfinished, System.currentTimeMillis() - start);
+        return failed.get() + unfinished;
     }
 
     /**
-     * value是否需要写入到缓存
+     * 解析方法的缓存执行计划
      *
-     * @param localCache
-     * @param localCacheValue
-     * @return
+     * @param method
+     * @return 初始化失败返回null
      */
-    private boolean isValueNeedWriteToCache(LocalCache localCache, LocalCacheValue localCacheValue) {
-        int globalMax = config.getOneCacheMaxValueLength() == null ? 0 : config.getOneCacheMaxValueLength();
-        int annotationMax = localCache != null ? localCache.maxValueLength() : 0;
-        Assert.isTrue(globalMax >= 0, () -> new IllegalArgumentException("oneCacheMaxValueLength配置错误，不得为负数"));
-        Assert.isTrue(annotationMax >= 0, () -> new IllegalArgumentException("maxValueLength配置错误，不得为负数"));
-        if (globalMax > 0 && localCacheValue.getJsonLength() > globalMax) {
-            return false;
+    private MethodCachePlan createMethodCachePlan(Method method) {
+        // 注解对象，批量缓存使用批量注解里的缓存配置
+        LocalCache localCache = method.getAnnotation(LocalCache.class);
+        LocalCacheBatch localCacheBatch = method.getAnnotation(LocalCacheBatch.class);
+        if (localCacheBatch != null) {
+            Assert.isNull(localCache, () -> new IllegalArgumentException("@LocalCache与@LocalCacheBatch不能同时使用"));
+            checkLocalCacheBatch(method, localCacheBatch);
+            localCache = localCacheBatch.cache();
         }
-        if (annotationMax > 0 && localCacheValue.getJsonLength() > annotationMax) {
-            return false;
+        if (localCache == null) {
+            return null;
         }
-        return true;
+        // 方法全限定名（带参数类）
+        String methodKey = LocalCacheUtil.getMethodCacheKey(method, localCache);
+        // 返回值为CompletableFuture、Mono、Flux的方法使用异步缓存
+        AsyncReturnTypeEnum asyncReturnType = AsyncReturnTypeEnum.of(method.getReturnType());
+        // 获取cache对象
+        Cache<LocalCacheKey, LocalCacheValue> cache = getOrInitCache(methodKey, localCache, asyncReturnType);
+        if (cache == null) {
+            return null;
+        }
+        AsyncCache<LocalCacheKey, LocalCacheValue> asyncCache = asyncReturnType.isAsync() ? asyncCacheMap.get(methodKey) : null;
+        // 长度限制
+        int globalMaxKeyLength = config.getOneCacheMaxKeyLength() == null ? 0 : config.getOneCacheMaxKeyLength();
+        int globalMaxValueLength = config.getOneCacheMaxValueLength() == null ? 0 : config.getOneCacheMaxValueLength();
+        Assert.isTrue(globalMaxKeyLength >= 0, () -> new IllegalArgumentException("oneCacheMaxKeyLength配置错误，不得为负数"));
+        Assert.isTrue(localCache.maxKeyLength() >= 0, () -> new IllegalArgumentException("maxKeyLength配置错误，不得为负数"));
+        Assert.isTrue(globalMaxValueLength >= 0, () -> new IllegalArgumentException("oneCacheMaxValueLength配置错误，不得为负数"));
+        Assert.isTrue(localCache.maxValueLength() >= 0, () -> new IllegalArgumentException("maxValueLength配置错误，不得为负数"));
+        Assert.isTrue(localCache.priority() > 0, () -> new IllegalArgumentException("priority配置错误，必须大于0"));
+        int maxKeyLength = MethodCachePlan.minLimit(globalMaxKeyLength, localCache.maxKeyLength());
+        int maxValueLength = MethodCachePlan.minLimit(globalMaxValueLength, localCache.maxValueLength());
+        // 单个缓存或全局清理使用大内存优先淘汰时维护大小索引
+        boolean sizeIndexed = localCache.cleanStrategy() == CleanStrategyEnum.SIZE_MAX_FIRST || CleanStrategyEnum.of(config.getCleanStrategy()) == CleanStrategyEnum.SIZE_MAX_FIRST;
+        MethodCachePlan plan = new MethodCachePlan(method, localCache, methodKey, LocalCacheContext.getMethodId(methodKey), cache, asyncCache, keyEncoder, maxKeyLength, maxValueLength, sizeIndexed);
+        LocalCacheContext.registerMethodCachePlan(plan);
+        return plan;
     }
 
     /**
@@ -215,47 +345,74 @@ public class LocalCacheAspect implements DisposableBean {
             Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
             Object target = joinPoint.getTarget();
             if (method != null & target != null) {
-                // 注解对象
-                LocalCache localCache = method.getAnnotation(LocalCache.class);
-                // 方法全限定名（带参数类）
-                String methodKey = LocalCacheUtil.getMethodCacheKey(method, localCache);
-                // 缓存key
-                LocalCacheKey key = new LocalCacheKey(methodKey, localCache, target, method, args);
-                // 是否写进缓存（长度限制）
-                boolean writeToCache = isKeyNeedWriteToCache(key, localCache);
-                // 获取cache对象
-                Cache<LocalCacheKey, LocalCacheValue> cache = getOrInitCache(key);
+                // 方法缓存执行计划（包含注解、方法名、cache对象等）
+                MethodCachePlan plan = getMethodCachePlan(method);
                 // 正常取得无报错
-                if (cache != null) {
+                if (plan != null) {
+                    // 批量缓存按元素处理
+                    if (plan.getBatch() != null) {
+                        return aroundBatch(plan, target, args);
+                    }
+                    LocalCache localCache = plan.getLocalCache();
+                    String methodKey = plan.getMethodKey();
+                    Cache<LocalCacheKey, LocalCacheValue> cache = plan.getCache();
+                    // 缓存key
+                    LocalCacheKey key = new LocalCacheKey(plan, target, args);
+                    // 是否写进缓存（长度限制）
+                    boolean writeToCache = plan.isKeyNeedWriteToCache(key);
+                    // 异步返回值的方法走异步缓存
+                    if (plan.getAsyncReturnType().isAsync()) {
+                        return aroundAsync(plan, key, writeToCache);
+                    }
                     // 是否命中缓存
                     boolean shotCache = false;
                     // 从缓存中获得结果
                     LocalCacheValue localCacheValue = cache.getIfPresent(key);
-                    // 缓存命中且缓存的对象没有被回收且缓存结果不为空
-                    if (localCacheValue != null && !localCacheValue.isEnqueued() && (ret = localCacheValue.getValue()) != null) {
+                    // 已逻辑过期但还在保留窗口内的旧值
+                    LocalCacheValue staleValue = null;
+                    if (localCacheValue != null && plan.isStaleEnabled() && plan.isExpired(localCacheValue)) {
+                        if (plan.isInStaleWhileRevalidate(localCacheValue)) {
+                            // 直接返回旧值，异步刷新
+                            this.revalidateAsync(plan, key);
+                        } else {
+                            staleValue = localCacheValue;
+                            localCacheValue = null;
+                        }
+                    }
+                    // 缓存命中且缓存的对象没有被回收且缓存结果不为空（或缓存的是null返回值）
+                    if (localCacheValue != null && !localCacheValue.isCollected() && ((ret = localCacheValue.getValue()) != null || localCacheValue.isNullValue())) {
                         // 缓存命中
                         shotCache = true;
                     } else {
                         // 缓存没有结果
-                        // 执行被缓存方法获得结果
-                        localCacheValue = this.cacheLoader(key);
-                        // 赋值返回
-                        ret = localCacheValue.getValue();
-                        // 决定是否要写入缓存（长度限制）
-                        writeToCache = writeToCache && isValueNeedWriteToCache(localCache, localCacheValue);
-                        if (writeToCache) {
-                            cache.put(key, localCacheValue);
-                            final LocalCacheValue finalValue = localCacheValue;
-                            this.localCachePutValueTriggers.forEach(trigger -> trigger.trigger(methodKey, localCache, key, finalValue));
+                        try {
+                            // 执行被缓存方法获得结果（开启了合并加载时并发的相同key只执行一次）
+                            localCacheValue = plan.isSingleFlight() ? this.singleFlightLoadAndPut(plan, key, writeToCache) : this.loadAndPut(plan, key, writeToCache);
+                            // 赋值返回
+                            ret = localCacheValue.getValue();
+                            writeToCache = writeToCache && plan.isValueCacheable(localCacheValue) && plan.isValueNeedWriteToCache(localCacheValue);
+                        } catch (Throwable e) {
+                            // 加载报错时在stale-if-error窗口内返回旧值
+                            if (staleValue == null || !plan.isInStaleIfError(staleValue) || staleValue.isCollected()) {
+                                throw e;
+                            }
+                            LocalCacheLogger.warn(localCache, "本地缓存：{} 加载报错，返回过期旧值，报错：{}", methodKey, e.toString());
+                            localCacheValue = staleValue;
+                            ret = staleValue.getValue();
+                            shotCache = true;
+                            writeToCache = false;
                         }
                     }
                     // 处理结果拷贝策略
-                    CopyResultStrategy copyResultStrategy = localCache.copyResultStrategy();
-                    if (copyResultStrategy != CopyResultStrategy.NONE && copyResultStrategy != null && ret != null) {
-                        ret = copyResultStrategy.getCopier().copy(ret);
+                    ILocalCacheResultCopier copier = plan.getCopier();
+                    if (copier != null && ret != null) {
+                        ret = copier.copy(ret);
                     }
 
-                    LocalCacheLogger.debug(localCache, "本地缓存：{} 参数：{} 处理完毕，{}命中缓存，是否写入缓存{}，返回值大小：{} Byte 返回结果：{}", methodKey, JSONObject.toJSONString(args), shotCache ? "已" : "未", writeToCache, localCacheValue.getJsonLength() * 2, JSONObject.toJSONString(ret));
+                    // 先判断日志级别，关闭时命中路径不做参数装箱和数组分配
+                    if (LocalCacheLogger.isDebugEnabled(localCache)) {
+                        LocalCacheLogger.debug(localCache, "本地缓存：{} 参数：{} 处理完毕，{}命中缓存，是否写入缓存{}，返回值大小：{} Byte 返回结果：{}", methodKey, args, shotCache ? "已" : "未", writeToCache, localCacheValue.getByteSize(), ret);
+                    }
                 } else {
                     // 意外找不到缓存直接走自己的
                     log.error("本地缓存出现意外找不到缓存也初始化失败");
@@ -270,82 +427,466 @@ public class LocalCacheAspect implements DisposableBean {
     }
 
     /**
-     * 缓存加载
+     * 执行被代理方法加载值，并按长度限制决定是否写入缓存
+     *
+     * @param plan
+     * @param key
+     * @param keyNeedWriteToCache key是否满足写入缓存的条件
+     * @return
+     */
+    private LocalCacheValue loadAndPut(MethodCachePlan plan, LocalCacheKey key, boolean keyNeedWriteToCache) {
+        LocalCacheValue localCacheValue = this.loadValue(key);
+        // 决定是否要写入缓存（null返回值、长度限制）
+        if (keyNeedWriteToCache && plan.isValueCacheable(localCacheValue) && plan.isValueNeedWriteToCache(localCacheValue)) {
+            plan.getCache().put(key, localCacheValue);
+            postPutPipeline.submit(localCacheValue);
+        }
+        return localCacheValue;
+    }
+
+    /**
+     * 异步刷新已过期的值（stale-while-revalidate）
+     * 在刷新线程池执行，与合并加载共用正在加载中的key，同一个key同时只刷新一次；线程池或该缓存的舱壁满了放弃本次刷新
+     * 放弃时移除正在加载中的key并以null完成，已在等待的线程自行加载（加载报错时按stale-if-error返回旧值）
+     *
+     * @param plan
+     * @param key
+     */
+    private void revalidateAsync(MethodCachePlan plan, LocalCacheKey key) {
+        CompletableFuture<LocalCacheValue> future = new CompletableFuture<>();
+        if (plan.getInFlightLoads().putIfAbsent(key, future) != null) {
+            return;
+        }
+        boolean submitted = LocalCacheExecutors.tryExecuteRefresh(plan.getMethodKey(), LocalCacheExecutors.defaultRefreshBulkhead(), () -> {
+            try {
+                future.complete(loadAndPut(plan, key, true));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                LocalCacheLogger.warn(plan.getLocalCache(), "本地缓存：{} 异步刷新过期值报错，报错：{}", plan.getMethodKey(), e.toString());
+            } finally {
+                plan.getInFlightLoads().remove(key, future);
+            }
+        });
+        if (!submitted) {
+            plan.getInFlightLoads().remove(key, future);
+            future.complete(null);
+            LocalCacheLogger.warn(plan.getLocalCache(), "本地缓存：{} 线程池已满，放弃本次异步刷新过期值", plan.getMethodKey());
+        }
+    }
+
+    /**
+     * 合并并发加载（single flight）
+     * 同一个key只有第一个线程执行加载，其他线程限时等待并共享结果；等待超时或加载被放弃（结果为null）则自行加载
+     *
+     * @param plan
+     * @param key
+     * @param keyNeedWriteToCache key是否满足写入缓存的条件
+     * @return
+     * @throws Throwable 加载线程抛出的异常原样抛出
+     */
+    private LocalCacheValue singleFlightLoadAndPut(MethodCachePlan plan, LocalCacheKey key, boolean keyNeedWriteToCache) throws Throwable {
+        CompletableFuture<LocalCacheValue> future = new CompletableFuture<>();
+        CompletableFuture<LocalCacheValue> inFlight = plan.getInFlightLoads().putIfAbsent(key, future);
+        if (inFlight == null) {
+            // 当前线程负责加载
+            try {
+                LocalCacheValue localCacheValue = loadAndPut(plan, key, keyNeedWriteToCache);
+                future.complete(localCacheValue);
+                return localCacheValue;
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                plan.getInFlightLoads().remove(key, future);
+            }
+        }
+        // 等待正在加载的线程
+        try {
+            LocalCacheValue localCacheValue = inFlight.get(plan.getSingleFlightWaitMillis(), TimeUnit.MILLISECONDS);
+            if (localCacheValue == null) {
+                // 异步刷新被放弃
+                return loadAndPut(plan, key, keyNeedWriteToCache);
+            }
+            plan.getCoalescedLoadCount().increment();
+            return localCacheValue;
+        } catch (TimeoutException e) {
+            LocalCacheLogger.debug(plan.getLocalCache(), "本地缓存：{} 等待合并加载超时 {} ms，自行执行被代理方法", plan.getMethodKey(), plan.getSingleFlightWaitMillis());
+            return loadAndPut(plan, key, keyNeedWriteToCache);
+        } catch (ExecutionException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    /**
+     * 异步返回值方法的缓存处理
+     * 缓存的是异步结果完成后的值，并发调用共享同一个加载中的future，异常完成或结果为空的不缓存
+     *
+     * @param plan
+     * @param key
+     * @param keyNeedWriteToCache key是否满足写入缓存的条件
+     * @return 方法声明的异步返回类型
+     */
+    private Object aroundAsync(MethodCachePlan plan, LocalCacheKey key, boolean keyNeedWriteToCache) {
+        AsyncCache<LocalCacheKey, LocalCacheValue> asyncCache = plan.getAsyncCache();
+        CompletableFuture<LocalCacheValue> future = keyNeedWriteToCache ? asyncCache.get(key, (k, e) -> asyncCacheLoader(k, true)) : asyncCacheLoader(key, false);
+        CompletableFuture<Object> result = future.thenCompose(localCacheValue -> {
+            if (localCacheValue == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Object value = localCacheValue.getValue();
+            if (value == null && !localCacheValue.isNullValue()) {
+                // 缓存值已被gc回收，移除后重新加载
+                asyncCache.asMap().remove(key, future);
+                return asyncCache.get(key, (k, e) -> asyncCacheLoader(k, true)).thenApply(v -> v != null ? v.getValue() : null);
+            }
+            return CompletableFuture.completedFuture(value);
+        });
+        // 处理结果拷贝策略
+        ILocalCacheResultCopier copier = plan.getCopier();
+        if (copier != null) {
+            result = result.thenApply(value -> value != null ? copier.copy(value) : null);
+        }
+        if (LocalCacheLogger.isDebugEnabled(plan.getLocalCache())) {
+            LocalCacheLogger.debug(plan.getLocalCache(), "本地缓存：{} 参数：{} 异步处理完毕，是否已完成：{}", plan.getMethodKey(), key.getArgs(), future.isDone());
+        }
+        return plan.getAsyncReturnType().fromFuture(result);
+    }
+
+    /**
+     * 异步缓存加载，返回值完成后再包装为缓存值，结果为空时future完成值为null（不缓存）
+     *
+     * @param k
+     * @param cached 结果是否会写入缓存
+     * @return
+     */
+    private CompletableFuture<LocalCacheValue> asyncCacheLoader(LocalCacheKey k, boolean cached) {
+        MethodCachePlan plan = k.getPlan();
+        LocalCacheLogger.debug(k.getLocalCache(), "本地缓存：{} 执行被代理方法异步加载最新值，执行参数：{}", k.getMethodKey(), k.getArgs());
+        long start = System.nanoTime();
+        Object returned = invokeMethod(k);
+        CompletableFuture<LocalCacheValue> future = plan.getAsyncReturnType().toFuture(returned)
+                .thenApply(value -> value != null || plan.isCacheNull() ? new LocalCacheValue(k, value, valueReferenceQueue, System.nanoTime() - start) : null);
+        if (cached) {
+            // 值完成后再做长度检查和内存统计，放到线程池执行，此时future已写入缓存
+            future.thenAcceptAsync(localCacheValue -> {
+                if (localCacheValue == null) {
+                    return;
+                }
+                if (plan.isValueNeedWriteToCache(localCacheValue)) {
+                    postPutPipeline.submit(localCacheValue);
+                } else {
+                    // 先计入内存占用，移除时由移除监听器扣减
+                    LocalCacheSizeUtil.onPut(localCacheValue);
+                    plan.getAsyncCache().asMap().remove(k, future);
+                }
+            }, LocalCacheExecutors.caffeineExecutor());
+        }
+        return future;
+    }
+
+    /**
+     * 校验批量缓存注解与方法签名
+     *
+     * @param method
+     * @param localCacheBatch
+     */
+    private void checkLocalCacheBatch(Method method, LocalCacheBatch localCacheBatch) {
+        int argIndex = localCacheBatch.argIndex();
+        Assert.isTrue(argIndex >= 0 && argIndex < method.getParameterCount(), () -> new IllegalArgumentException("@LocalCacheBatch argIndex超出方法参数范围"));
+        Assert.isTrue(Collection.class.isAssignableFrom(method.getParameterTypes()[argIndex]), () -> new IllegalArgumentException("@LocalCacheBatch argIndex对应的参数需为Collection"));
+        Class<?> returnType = method.getReturnType();
+        Assert.isTrue(Map.class.isAssignableFrom(returnType) || returnType.isAssignableFrom(ArrayList.class), () -> new IllegalArgumentException("@LocalCacheBatch 方法返回值需为Map或List"));
+        Assert.isTrue(Map.class.isAssignableFrom(returnType) || StrUtil.isNotBlank(localCacheBatch.keyProperty()), () -> new IllegalArgumentException("@LocalCacheBatch 返回值为List时需配置keyProperty"));
+        // 批量缓存不检查过期旧值，配置了窗口会把过期值当成新值返回
+        Assert.isTrue(localCacheBatch.cache().staleWhileRevalidateFor() <= 0 && localCacheBatch.cache().staleIfErrorFor() <= 0, () -> new IllegalArgumentException("@LocalCacheBatch 不支持staleWhileRevalidateFor、staleIfErrorFor"));
+    }
+
+    /**
+     * 批量缓存处理
+     * 每个id单独缓存，已缓存的直接取，未缓存的通过caffeine getAll合并成一次调用被代理方法加载，再按参数中id的顺序合并返回
+     *
+     * @param plan
+     * @param target
+     * @param args
+     * @return Map 或 List
+     * @throws Throwable 被代理方法抛出的异常原样抛出
+     */
+    private Object aroundBatch(MethodCachePlan plan, Object target, Object[] args) throws Throwable {
+        int argIndex = plan.getBatch().argIndex();
+        Collection<?> ids = (Collection<?>) args[argIndex];
+        if (ids == null || ids.isEmpty()) {
+            return plan.getInvoker().invoke(target, args);
+        }
+        // 每个id一个key，其他参数参与key
+        Map<LocalCacheKey, Object> keyIdMap = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+        for (Object id : ids) {
+            Object[] elementArgs = args.clone();
+            elementArgs[argIndex] = id;
+            keyIdMap.put(new LocalCacheKey(plan, target, elementArgs), id);
+        }
+        // 超出长度限制等不写入缓存的值
+        Map<LocalCacheKey, LocalCacheValue> notCached = new HashMap<>();
+        Map<LocalCacheKey, LocalCacheValue> values = plan.getCache().getAll(keyIdMap.keySet(), missingKeys -> {
+            Map<LocalCacheKey, LocalCacheValue> loaded = batchLoad(plan, missingKeys);
+            Map<LocalCacheKey, LocalCacheValue> toCache = new HashMap<>(loaded.size() * 4 / 3 + 1);
+            loaded.forEach((key, value) -> {
+                if (plan.isKeyNeedWriteToCache(key) && plan.isValueNeedWriteToCache(value)) {
+                    toCache.put(key, value);
+                    postPutPipeline.submit(value);
+                } else {
+                    notCached.put(key, value);
+                }
+            });
+            return toCache;
+        });
+        // 按参数中id的顺序合并
+        boolean returnMap = Map.class.isAssignableFrom(plan.getMethod().getReturnType());
+        Map<Object, Object> resultMap = returnMap ? new LinkedHashMap<>(keyIdMap.size() * 4 / 3 + 1) : null;
+        List<Object> resultList = returnMap ? null : new ArrayList<>(keyIdMap.size());
+        ILocalCacheResultCopier copier = plan.getCopier();
+        for (Map.Entry<LocalCacheKey, Object> entry : keyIdMap.entrySet()) {
+            LocalCacheValue localCacheValue = values.get(entry.getKey());
+            if (localCacheValue == null) {
+                localCacheValue = notCached.get(entry.getKey());
+            }
+            Object value = localCacheValue != null ? localCacheValue.getValue() : null;
+            if (value == null && localCacheValue != null && !localCacheValue.isNullValue()) {
+                // 缓存值已被gc回收，单独加载
+                plan.getCache().invalidate(entry.getKey());
+                LocalCacheValue reloaded = batchLoad(plan, Collections.singletonList(entry.getKey())).get(entry.getKey());
+                value = reloaded != null ? reloaded.getValue() : null;
+            }
+            if (value == null) {
+                continue;
+            }
+            if (copier != null) {
+                value = copier.copy(value);
+            }
+            if (returnMap) {
+                resultMap.put(entry.getValue(), value);
+            } else {
+                resultList.add(value);
+            }
+        }
+        if (LocalCacheLogger.isDebugEnabled(plan.getLocalCache())) {
+            LocalCacheLogger.debug(plan.getLocalCache(), "本地缓存：{} 批量处理完毕，请求id数：{}，加载id数：{}", plan.getMethodKey(), keyIdMap.size(), keyIdMap.size() - values.size() + notCached.size());
+        }
+        return returnMap ? resultMap : resultList;
+    }
+
+    /**
+     * 批量加载，未缓存的id合并成一次调用被代理方法
+     * 同一批key来自同一次调用，除id外的参数一致
+     *
+     * @param plan
+     * @param keys
+     * @return 返回值中有的id（开启cacheNull时包括没有的id）对应的缓存值
+     */
+    private Map<LocalCacheKey, LocalCacheValue> batchLoad(MethodCachePlan plan, Iterable<? extends LocalCacheKey> keys) {
+        int argIndex = plan.getBatch().argIndex();
+        List<LocalCacheKey> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+        if (keyList.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Collection<Object> ids = Set.class.isAssignableFrom(plan.getBatchArgType()) ? new LinkedHashSet<>() : new ArrayList<>(keyList.size());
+        for (LocalCacheKey key : keyList) {
+            ids.add(key.getArgs()[argIndex]);
+        }
+        LocalCacheKey first = keyList.get(0);
+        Object[] callArgs = first.getArgs().clone();
+        callArgs[argIndex] = ids;
+        LocalCacheLogger.debug(plan.getLocalCache(), "本地缓存：{} 执行被代理方法批量加载，id数：{}", plan.getMethodKey(), ids.size());
+        Object result;
+        long start = System.nanoTime();
+        try {
+            result = plan.getInvoker().invoke(first.getTarget(), callArgs);
+        } catch (Throwable e) {
+            throw LocalCacheAspect.<RuntimeException>sneakyThrow(e);
+        }
+        // 批量加载的耗时平均到每个id
+        long loadNanos = (System.nanoTime() - start) / ids.size();
+        // 返回值按id建立索引
+        Map<?, ?> resultIndex = LocalCacheUtil.indexBatchResult(result, plan.getBatch().keyProperty());
+        Map<LocalCacheKey, LocalCacheValue> loaded = new HashMap<>(keyList.size() * 4 / 3 + 1);
+        for (LocalCacheKey key : keyList) {
+            Object id = key.getArgs()[argIndex];
+            Object value = LocalCacheUtil.getBatchResult(resultIndex, id);
+            if (value != null || plan.isCacheNull()) {
+                loaded.put(key, new LocalCacheValue(key, value, valueReferenceQueue, loadNanos));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 缓存加载（自动刷新），不可缓存的null返回值返回null，caffeine会移除该key
      *
      * @param k
      * @return
      */
     private LocalCacheValue cacheLoader(LocalCacheKey k) {
+        LocalCacheValue localCacheValue;
+        if (k.getPlan().getBatch() != null) {
+            localCacheValue = batchLoad(k.getPlan(), Collections.singletonList(k)).get(k);
+        } else {
+            localCacheValue = loadValue(k);
+            localCacheValue = k.getPlan().isValueCacheable(localCacheValue) ? localCacheValue : null;
+        }
+        // 返回的值由caffeine写入缓存，替换掉的旧值由移除监听器扣减
+        postPutPipeline.submit(localCacheValue);
+        return localCacheValue;
+    }
+
+    /**
+     * 执行被代理方法加载值
+     *
+     * @param k
+     * @return
+     */
+    private LocalCacheValue loadValue(LocalCacheKey k) {
+        LocalCacheLogger.debug(k.getLocalCache(), "本地缓存：{} 执行被代理方法加载最新值，执行参数：{}", k.getMethodKey(), k.getArgs());
+        LocalCacheMicroBatcher microBatcher = k.getPlan().getMicroBatcher();
+        long start = System.nanoTime();
+        Object value = microBatcher != null ? microBatchLoad(microBatcher, k) : invokeMethod(k);
+        return new LocalCacheValue(k, value, valueReferenceQueue, System.nanoTime() - start);
+    }
+
+    /**
+     * 执行被代理方法
+     * 使用执行计划里的方法调用器，被代理方法抛出的异常（包括受检异常）原样抛出
+     *
+     * @param k
+     * @return
+     */
+    private Object invokeMethod(LocalCacheKey k) {
         try {
-            LocalCacheLogger.debug(k.getLocalCache(), "本地缓存：{} 执行被代理方法加载最新值，执行参数：{}", k.getMethodKey(), JSONObject.toJSONString(k.getArgs()));
-            Object value = k.getMethod().invoke(k.getTarget(), k.getArgs());
-            return new LocalCacheValue(k, value, valueReferenceQueue);
-        } catch (InvocationTargetException | IllegalAccessException e) {
-            log.error("本地缓存：" + k.getMethodKey() + " 动态加载缓存值报错", e);
-            throw new RuntimeException(e);
+            return k.getPlan().getInvoker().invoke(k.getTarget(), k.getArgs());
+        } catch (Throwable e) {
+            throw LocalCacheAspect.<RuntimeException>sneakyThrow(e);
         }
     }
 
+    /**
+     * 合并到批量方法中加载
+     *
+     * @param microBatcher
+     * @param k
+     * @return
+     */
+    private Object microBatchLoad(LocalCacheMicroBatcher microBatcher, LocalCacheKey k) {
+        try {
+            return microBatcher.load(k);
+        } catch (Throwable e) {
+            throw LocalCacheAspect.<RuntimeException>sneakyThrow(e);
+        }
+    }
+
+    /**
+     * 不包装直接抛出受检异常（caffeine的加载函数不能声明抛出Throwable）
+     *
+     * @param e
+     * @param <E>
+     * @return 不会返回
+     * @throws E
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+
     /**
      * 获取缓存对象，当不存在的时候初始化，是线程安全的
-     * @param key
+     * 异步方法返回的是异步缓存的同步视图
+     * @param methodKey
+     * @param localCache
+     * @param asyncReturnType
      * @return
      */
-    private Cache<LocalCacheKey, LocalCacheValue> getOrInitCache(LocalCacheKey key) {
-        Cache<LocalCacheKey, LocalCacheValue> cache = cacheMap.get(key.getMethodKey());
+    private Cache<LocalCacheKey, LocalCacheValue> getOrInitCache(String methodKey, LocalCache localCache, AsyncReturnTypeEnum asyncReturnType) {
+        Cache<LocalCacheKey, LocalCacheValue> cache = cacheMap.get(methodKey);
         if (cache == null) {
-            cache = initMethodCacheAndGet(key);
+            cache = initMethodCacheAndGet(methodKey, localCache, asyncReturnType);
         }
         return cache;
     }
 
     /**
-     * 上锁初始化并返回cache对象，是线程安全的
-     * @param key
-     * @return
+     * 初始化并返回cache对象，是线程安全的
+     * 按方法名computeIfAbsent，同一个方法只初始化一次，不同方法互不阻塞
+     * @param methodKey
+     * @param localCache
+     * @param asyncReturnType
+     * @return 初始化失败返回null
+     */
+    private Cache<LocalCacheKey, LocalCacheValue> initMethodCacheAndGet(String methodKey, LocalCache localCache, AsyncReturnTypeEnum asyncReturnType) {
+        return cacheMap.computeIfAbsent(methodKey, k -> createMethodCache(methodKey, localCache, asyncReturnType));
+    }
+
+    /**
+     * 检查注解参数并创建cache对象
+     * @param methodKey
+     * @param localCache
+     * @param asyncReturnType
+     * @return 初始化失败返回null
      */
-    private Cache<LocalCacheKey, LocalCacheValue> initMethodCacheAndGet(LocalCacheKey key) {
-        String methodKey = key.getMethodKey();
-        LocalCache localCache = key.getLocalCache();
-        reentrantLock.lock();
+    private Cache<LocalCacheKey, LocalCacheValue> createMethodCache(String methodKey, LocalCache localCache, AsyncReturnTypeEnum asyncReturnType) {
         Cache<LocalCacheKey, LocalCacheValue> cache = null;
         try {
             LocalCacheLogger.info(localCache, "本地缓存：{} 开始初始化", methodKey);
-            cache = cacheMap.get(methodKey);
-            // 上锁后二次校验
-            if (cache == null) {
-                // 开始初始化
-                // 检查参数
-                Assert.isTrue(localCache.initCapacity() >= 1);
-                Assert.isTrue(localCache.initCapacity() <= localCache.maxCapacity());
-                Assert.isTrue(localCache.expireAfterWrite() >= 1);
-                Assert.isTrue(localCache.timeUnit().toMillis(localCache.expireAfterWrite()) >= 50, () -> new IllegalArgumentException("缓存有效时间最小为50ms"));
-                Assert.isTrue(localCache.expireAfterWrite() > localCache.refreshAfterWrite(), () -> new IllegalArgumentException("缓存有效时间需大于缓存动态更新时间"));
-                if (isAutoAsyncRefresh(localCache)) {
-                    Assert.isTrue(localCache.timeUnit().toMillis(localCache.expireAfterWrite() - localCache.refreshAfterWrite()) > 100, () -> new IllegalArgumentException("缓存有效时间与缓存动态更新时间之差需大于100ms"));
-                }
+            // 开始初始化
+            // 检查参数
+            Assert.isTrue(localCache.initCapacity() >= 1);
+            Assert.isTrue(localCache.initCapacity() <= localCache.maxCapacity());
+            Assert.isTrue(localCache.expireAfterWrite() >= 1);
+            Assert.isTrue(localCache.timeUnit().toMillis(localCache.expireAfterWrite()) >= 50, () -> new IllegalArgumentException("缓存有效时间最小为50ms"));
+            Assert.isTrue(localCache.expireAfterWrite() > localCache.refreshAfterWrite(), () -> new IllegalArgumentException("缓存有效时间需大于缓存动态更新时间"));
+            if (isAutoAsyncRefresh(localCache)) {
+                Assert.isTrue(localCache.timeUnit().toMillis(localCache.expireAfterWrite() - localCache.refreshAfterWrite()) > 100, () -> new IllegalArgumentException("缓存有效时间与缓存动态更新时间之差需大于100ms"));
+            }
+            Assert.isTrue(localCache.nullExpireAfterWrite() == -1 || localCache.nullExpireAfterWrite() >= 1, () -> new IllegalArgumentException("null返回值缓存有效时间需为-1或正数"));
+            Assert.isTrue(localCache.staleWhileRevalidateFor() >= 0 && localCache.staleIfErrorFor() >= 0, () -> new IllegalArgumentException("过期旧值窗口不得为负数"));
+            // 开启负缓存时按条目计算过期时间
+            LocalCacheValueExpiry expiry = LocalCacheValueExpiry.of(localCache);
+            // 配置了内存限制时按内存占用淘汰
+            LocalCacheByteWeigher weigher = LocalCacheByteWeigher.of(localCache, config.getOneCacheUsedMemoryMaxSizeByte());
+            Long maximumWeight = weigher != null ? weigher.getMaximumWeight() : null;
 
-                // 移除key日志打印监听器
-                RemovalListener<Object, Object> removalListener = LocalCacheLogger.isEnableLog(localCache) ? this.removalListener : null;
+            // 移除key监听器：扣减内存占用，开启日志时打印移除日志
+            RemovalListener<Object, Object> logRemovalListener = LocalCacheLogger.isEnableLog(localCache) ? this.removalListener : null;
+            RemovalListener<LocalCacheKey, LocalCacheValue> removalListener = (k, v, cause) -> {
+                if (v != null) {
+                    LocalCacheSizeUtil.onRemoval(v);
+                }
+                if (logRemovalListener != null) {
+                    logRemovalListener.onRemoval(k, v, cause);
+                }
+            };
 
-                // 执行初始化
+            // 执行初始化
+            if (asyncReturnType.isAsync()) {
+                LocalCacheLogger.info(localCache, "本地缓存 {} 异步返回值缓存池初始化开始，返回值类型：{}", methodKey, asyncReturnType.getDesc());
+                LocalCacheUtil<LocalCacheKey, LocalCacheValue> builder = LocalCacheUtil.<LocalCacheKey, LocalCacheValue>newCacheBuilder(methodKey).basicCacheConfig(localCache.initCapacity(), localCache.maxCapacity(), localCache.expireAfterWrite()).setRemovalListener(removalListener).setTimeUnit(localCache.timeUnit()).setExpiry(expiry).setMaximumWeight(maximumWeight).setWeigher(weigher).setLocalCache(localCache);
+                AsyncCache<LocalCacheKey, LocalCacheValue> asyncCache;
                 if (isAutoAsyncRefresh(localCache)) {
-                    LocalCacheLogger.info(localCache, "本地缓存 {} 自动异步更新缓存池初始化开始", methodKey);
-                    cache = LocalCacheUtil.newCacheBuilder(methodKey).basicAutoRefreshCacheConfig(localCache.initCapacity(), localCache.maxCapacity(), localCache.expireAfterWrite(), localCache.refreshAfterWrite()).setExecutor(executor).setRemovalListener(removalListener).setTimeUnit(localCache.timeUnit()).setLocalCache(localCache).build((this::cacheLoader));
-                    LocalCacheLogger.info(localCache, "本地缓存: {} 自动异步更新缓存池初始化结束，cache对象是否为空：{}", methodKey, cache == null);
+                    asyncCache = builder.setRefreshAfterWrite(localCache.refreshAfterWrite()).buildAsync((k, e) -> asyncCacheLoader(k, true));
                 } else {
-                    LocalCacheLogger.info(localCache, "本地缓存 {} 普通本地缓存池初始化开始", methodKey);
-                    cache = LocalCacheUtil.newCacheBuilder(methodKey).basicCacheConfig(localCache.initCapacity(), localCache.maxCapacity(), localCache.expireAfterWrite()).setExecutor(executor).setRemovalListener(removalListener).setTimeUnit(localCache.timeUnit()).setLocalCache(localCache).build();
-                    LocalCacheLogger.info(localCache, "本地缓存: {} 普通本地缓存池初始化结束，cache对象是否为空：{}", methodKey, cache == null);
+                    asyncCache = builder.buildAsync();
                 }
-                cacheMap.put(methodKey, cache);
+                asyncCacheMap.put(methodKey, asyncCache);
+                cache = asyncCache.synchronous();
+                LocalCacheLogger.info(localCache, "本地缓存: {} 异步返回值缓存池初始化结束", methodKey);
+            } else if (isAutoAsyncRefresh(localCache)) {
+                LocalCacheLogger.info(localCache, "本地缓存 {} 自动异步更新缓存池初始化开始", methodKey);
+                cache = LocalCacheUtil.<LocalCacheKey, LocalCacheValue>newCacheBuilder(methodKey).basicAutoRefreshCacheConfig(localCache.initCapacity(), localCache.maxCapacity(), localCache.expireAfterWrite(), localCache.refreshAfterWrite()).setRemovalListener(removalListener).setTimeUnit(localCache.timeUnit()).setExpiry(expiry).setMaximumWeight(maximumWeight).setWeigher(weigher).setLocalCache(localCache).build((this::cacheLoader));
+                LocalCacheLogger.info(localCache, "本地缓存: {} 自动异步更新缓存池初始化结束，cache对象是否为空：{}", methodKey, cache == null);
             } else {
-                LocalCacheLogger.info(localCache, "本地缓存：{} 已被其他线程初始化，本次初始化取消", methodKey);
+                LocalCacheLogger.info(localCache, "本地缓存 {} 普通本地缓存池初始化开始", methodKey);
+                cache = LocalCacheUtil.<LocalCacheKey, LocalCacheValue>newCacheBuilder(methodKey).basicCacheConfig(localCache.initCapacity(), localCache.maxCapacity(), localCache.expireAfterWrite()).setRemovalListener(removalListener).setTimeUnit(localCache.timeUnit()).setExpiry(expiry).setMaximumWeight(maximumWeight).setWeigher(weigher).setLocalCache(localCache).build();
+                LocalCacheLogger.info(localCache, "本地缓存: {} 普通本地缓存池初始化结束，cache对象是否为空：{}", methodKey, cache == null);
             }
         } catch (Exception e) {
             log.error("方法本地缓存初始化异常", e);
-        } finally {
-            reentrantLock.unlock();
         }
         return cache;
     }
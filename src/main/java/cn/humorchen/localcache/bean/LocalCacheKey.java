@@ -1,16 +1,16 @@
 package cn.humorchen.localcache.bean;
 
-import cn.hutool.core.util.HashUtil;
-import cn.hutool.crypto.digest.MD5;
 import cn.humorchen.localcache.LocalCache;
+import cn.humorchen.localcache.LocalCacheContext;
+import cn.humorchen.localcache.Murmur3Hasher;
 import cn.humorchen.localcache.interfaces.ILocalCacheEquals;
-import com.alibaba.fastjson.JSONObject;
+import cn.humorchen.localcache.interfaces.ILocalCacheKeyEncoder;
+import cn.humorchen.localcache.interfaces.Impl.Murmur3KeyEncoder;
 import com.alibaba.fastjson.annotation.JSONField;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.Method;
-import java.util.Objects;
 
 /**
  * @author  humorchen
@@ -24,6 +24,16 @@ public class LocalCacheKey {
      * 方法全限定名
      */
     private String methodKey;
+    /**
+     * 方法id，methodKey驻留后的整数
+     */
+    @JSONField(serialize = false)
+    private int methodId;
+    /**
+     * 方法缓存执行计划，手动构建的key为空
+     */
+    @JSONField(serialize = false)
+    private MethodCachePlan plan;
     /**
      * 被代理方法用到的注解
      */
@@ -44,14 +54,20 @@ public class LocalCacheKey {
      */
     private Object[] args;
     /**
-     * args的json的md5
+     * args的128位指纹高64位
      */
-    private String[] argsMd5;
+    @JSONField(serialize = false)
+    private long argsHashHigh;
     /**
-     * Object[] args的json字符串长度
+     * args的128位指纹低64位
+     */
+    @JSONField(serialize = false)
+    private long argsHashLow;
+    /**
+     * Object[] args的估算长度（约等于json字符串长度），由编码器计算
      * 长度一致不代表相等
      */
-    private int argsJSONLength;
+    private int argsLength;
 
 
     public LocalCacheKey() {
@@ -59,23 +75,32 @@ public class LocalCacheKey {
     }
 
     public LocalCacheKey(String methodKey, LocalCache localCache, Object target, Method method, Object[] args) {
+        this(methodKey, localCache, target, method, args, Murmur3KeyEncoder.INSTANCE);
+    }
+
+    public LocalCacheKey(String methodKey, LocalCache localCache, Object target, Method method, Object[] args, ILocalCacheKeyEncoder keyEncoder) {
+        this(methodKey, LocalCacheContext.getMethodId(methodKey), localCache, target, method, args, keyEncoder);
+    }
+
+    public LocalCacheKey(MethodCachePlan plan, Object target, Object[] args) {
+        this(plan.getMethodKey(), plan.getMethodId(), plan.getLocalCache(), target, plan.getMethod(), args, plan.getKeyEncoder());
+        this.plan = plan;
+    }
+
+    private LocalCacheKey(String methodKey, int methodId, LocalCache localCache, Object target, Method method, Object[] args, ILocalCacheKeyEncoder keyEncoder) {
         this.methodKey = methodKey;
+        this.methodId = methodId;
         this.localCache = localCache;
         this.target = target;
         this.method = method;
         this.args = args;
 
         if (args != null && args.length > 0) {
-            int argsJSONLength = 0;
-            String[] argsMd5 = new String[args.length];
-            for (int i = 0; i < args.length; i++) {
-                Object arg = args[i];
-                String jsonString = JSONObject.toJSONString(arg);
-                argsJSONLength += jsonString.length();
-                argsMd5[i] = MD5.create().digestHex(jsonString);
-            }
-            this.argsJSONLength = argsJSONLength;
-            this.argsMd5 = argsMd5;
+            Murmur3Hasher hasher = new Murmur3Hasher();
+            this.argsLength = keyEncoder.encode(args, hasher);
+            hasher.finish();
+            this.argsHashHigh = hasher.getHigh();
+            this.argsHashLow = hasher.getLow();
         }
     }
 
@@ -93,28 +118,24 @@ public class LocalCacheKey {
         LocalCacheKey annotationKey = (LocalCacheKey) o;
         // 不比对被代理对象，被代理的方法是同一个类的同一个方法，不关心是实例
         // 比对方法
-        if (!Objects.equals(annotationKey.getMethodKey(), this.getMethodKey())) {
+        if (annotationKey.methodId != this.methodId) {
+            return false;
+        }
+        // 比对参数指纹，hashCode也只用指纹，equals相同的key一定hashCode相同
+        // 参数自己的equals、hashCode不参与判定，equals相同但指纹不同（例如equals忽略了部分字段）视为不同的key，只会少命中，不会命中错误的值
+        if (this.argsHashHigh != annotationKey.argsHashHigh || this.argsHashLow != annotationKey.argsHashLow) {
             return false;
         }
-        // 比对参数
         if (args != null && args.length > 0) {
-            // 逐个对比参数
+            if (annotationKey.args == null || annotationKey.args.length != args.length) {
+                return false;
+            }
+            // 指纹中ILocalCacheEquals参数只编码了类型和hashCode，由接口判定是否相同
             for (int i = 0; i < args.length; i++) {
-                // 优先对象自己的equals，如果没有自己的equals导致不相同则用md5值再判断一下是不是相同
                 Object arg = args[i];
                 Object objArg = annotationKey.args[i];
-                // 接口判定
-                if (arg instanceof ILocalCacheEquals && objArg instanceof ILocalCacheEquals) {
-                    boolean localCacheEquals = ((ILocalCacheEquals) arg).equals((ILocalCacheEquals) objArg);
-                    if (!localCacheEquals) {
-                        return false;
-                    }
-                } else {
-                    // equals方法和md5判定
-                    boolean equalsOrMd5 = Objects.equals(arg, objArg) || Objects.equals(this.argsMd5[i], annotationKey.argsMd5[i]);
-                    if (!equalsOrMd5) {
-                        return false;
-                    }
+                if (arg instanceof ILocalCacheEquals && objArg instanceof ILocalCacheEquals && !((ILocalCacheEquals) arg).equals((ILocalCacheEquals) objArg)) {
+                    return false;
                 }
             }
         }
@@ -123,19 +144,9 @@ public class LocalCacheKey {
 
     @Override
     public int hashCode() {
-        // 加入method
-        StringBuilder stringBuilder = new StringBuilder(methodKey);
-        // 融入参数hash打乱同method不同参数的hash
-        if (args != null) {
-            for (Object arg : args) {
-                if (arg != null) {
-                    stringBuilder.append(arg.hashCode());
-                } else {
-                    stringBuilder.append("null".hashCode());
-                }
-            }
-        }
-        return HashUtil.javaDefaultHash(stringBuilder.toString());
+        // 方法id融合参数指纹，参数内容相同的key落在同一个桶
+        long hash = argsHashHigh ^ argsHashLow;
+        return 31 * methodId + (int) (hash ^ (hash >>> 32));
     }
 
 
@@ -1,25 +1,48 @@
 package cn.humorchen.localcache.bean;
 
+import cn.humorchen.localcache.LocalCacheSizeUtil;
+import cn.humorchen.localcache.enums.ValueStrengthEnum;
 import com.alibaba.fastjson.JSONObject;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author  humorchen
  * date: 2023/12/28
  * description: 本地缓存，方法返回值
+ * 返回值按引用强度持有：强引用直接持有，软/弱引用通过注册到引用队列的引用对象持有，被gc回收后由引用回收线程从缓存移除
  **/
 @Getter
-public class LocalCacheValue extends SoftReference<Object> {
+public class LocalCacheValue {
+    /**
+     * null返回值的占位对象，全局共享且强引用，不会被gc回收，用于区分“返回值为null”和“值已被gc回收”
+     */
+    private static final Object NULL_VALUE = new Object();
+    /**
+     * 返回值（强引用）或返回值的引用对象（软/弱引用）
+     */
+    @Getter(AccessLevel.NONE)
+    private final Object referent;
+    /**
+     * 引用强度，负缓存固定为强引用
+     */
+    private final ValueStrengthEnum valueStrength;
     /**
      * 值对应的key引用
      */
     private final LocalCacheKey key;
     /**
-     * 返回值的json字符串长度
+     * 返回值的json字符串长度，只在配置了value最大长度时计算，否则为0
      * -- GETTER --
      * 获取值的json字符串长度
      *
@@ -27,26 +50,210 @@ public class LocalCacheValue extends SoftReference<Object> {
      */
     private final int jsonLength;
     /**
-     * 上次访问时间
+     * 返回值估算的内存占用（字节），负缓存为0，-1 代表还未计算
+     * 首次获取时计算，一般由写入后处理线程计算，不占用业务线程
+     *
+     * @see LocalCacheSizeUtil#getSizeEstimator()
+     */
+    private volatile long byteSize;
+    /**
+     * 返回值的类型，负缓存为空，用于按类型统计内存占用
+     */
+    private final Class<?> valueClass;
+    /**
+     * 是否为负缓存（null返回值，或开启了cacheEmpty的空返回值），使用单独的有效时间且不计入内存统计
+     */
+    private final boolean negative;
+    /**
+     * 写入时间（System.nanoTime），用于判断逻辑过期
+     */
+    private final long writeNanos;
+    /**
+     * 加载耗时（纳秒），批量加载时为平均到每个值的耗时，0 代表未知（例如手动写入的值）
      */
-    private long lastAccessTimestamp;
+    private final long loadNanos;
+    /**
+     * 上次访问时间（System.nanoTime），用于近似LRU淘汰比较空闲时间
+     */
+    private long lastAccessNanos;
+    /**
+     * 命中次数，用于近似LFU淘汰；并发累加不加锁，允许少量丢失
+     */
+    private int hitCount;
+    /**
+     * 是否已从缓存移除（移除监听器标记），用于写入后处理晚于移除时不再加入大小索引
+     */
+    private volatile boolean removed;
 
     public LocalCacheValue(@NonNull LocalCacheKey key, Object object, @NonNull ReferenceQueue<Object> referenceQueue) {
-        super(object, referenceQueue);
+        this(key, object, referenceQueue, 0);
+    }
+
+    public LocalCacheValue(@NonNull LocalCacheKey key, Object object, @NonNull ReferenceQueue<Object> referenceQueue, long loadNanos) {
         this.key = key;
-        this.jsonLength = JSONObject.toJSONString(object).length();
-        this.lastAccessTimestamp = System.currentTimeMillis();
+        MethodCachePlan plan = key.getPlan();
+        this.negative = object == null || (plan != null && plan.isCacheEmpty() && isEmptyValue(object));
+        this.valueStrength = this.negative ? ValueStrengthEnum.STRONG : plan != null ? plan.getValueStrength() : ValueStrengthEnum.SOFT;
+        Object value = object != null ? object : NULL_VALUE;
+        if (this.valueStrength == ValueStrengthEnum.WEAK) {
+            this.referent = new WeakValueReference(this, value, referenceQueue);
+        } else if (this.valueStrength == ValueStrengthEnum.SOFT) {
+            this.referent = new SoftValueReference(this, value, referenceQueue);
+        } else {
+            this.referent = value;
+        }
+        boolean needJsonLength = !this.negative && (plan == null || plan.getMaxValueLength() > 0);
+        this.jsonLength = needJsonLength ? JSONObject.toJSONString(object).length() : 0;
+        this.byteSize = this.negative ? 0 : -1;
+        this.valueClass = this.negative ? null : object.getClass();
+        this.writeNanos = System.nanoTime();
+        this.lastAccessNanos = this.writeNanos;
+        this.loadNanos = Math.max(loadNanos, 0);
     }
 
     /**
      * 获取值
+     * 返回null代表返回值为null或值已被gc回收，可通过isNullValue区分
      *
      * @return
      */
     public Object getValue() {
-        this.lastAccessTimestamp = System.currentTimeMillis();
-        return get();
+        this.lastAccessNanos = System.nanoTime();
+        if (this.hitCount < Integer.MAX_VALUE) {
+            this.hitCount++;
+        }
+        Object value = get();
+        return value != NULL_VALUE ? value : null;
+    }
+
+    /**
+     * 值是否已被gc回收
+     *
+     * @return
+     */
+    public boolean isCollected() {
+        return referent instanceof ValueReference && ((ValueReference) referent).get() == null;
+    }
+
+    /**
+     * 上次访问时间戳（毫秒）
+     *
+     * @return
+     */
+    public long getLastAccessTimestamp() {
+        return System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastAccessNanos);
+    }
+
+    /**
+     * 获取返回值估算的内存占用（字节），未计算时计算一次
+     * 值已被gc回收时为0
+     *
+     * @return
+     */
+    public long getByteSize() {
+        long size = this.byteSize;
+        if (size < 0) {
+            Object value = get();
+            size = value != null ? LocalCacheSizeUtil.estimateSize(value) : 0;
+            this.byteSize = size;
+        }
+        return size;
+    }
+
+    /**
+     * 标记已从缓存移除
+     */
+    public void markRemoved() {
+        this.removed = true;
+    }
+
+    /**
+     * 缓存的是否为null返回值
+     *
+     * @return
+     */
+    public boolean isNullValue() {
+        return get() == NULL_VALUE;
     }
 
+    /**
+     * 返回值，未解开null占位对象；已被gc回收时为null
+     *
+     * @return
+     */
+    private Object get() {
+        return referent instanceof ValueReference ? ((ValueReference) referent).get() : referent;
+    }
 
+    /**
+     * 是否为空返回值（空集合、空Map、空数组、Optional.empty()）
+     *
+     * @param object
+     * @return
+     */
+    public static boolean isEmptyValue(Object object) {
+        if (object instanceof Collection) {
+            return ((Collection<?>) object).isEmpty();
+        }
+        if (object instanceof Map) {
+            return ((Map<?, ?>) object).isEmpty();
+        }
+        if (object instanceof Optional) {
+            return !((Optional<?>) object).isPresent();
+        }
+        return object != null && object.getClass().isArray() && Array.getLength(object) == 0;
+    }
+
+    /**
+     * 返回值的引用对象，被gc回收后进入引用队列，通过它找回所属的缓存值
+     */
+    public interface ValueReference {
+        /**
+         * 所属的缓存值
+         *
+         * @return
+         */
+        LocalCacheValue getOwner();
+
+        /**
+         * 返回值，已被gc回收时为null
+         *
+         * @return
+         */
+        Object get();
+    }
+
+    /**
+     * 软引用
+     */
+    private static final class SoftValueReference extends SoftReference<Object> implements ValueReference {
+        private final LocalCacheValue owner;
+
+        SoftValueReference(LocalCacheValue owner, Object value, ReferenceQueue<Object> referenceQueue) {
+            super(value, referenceQueue);
+            this.owner = owner;
+        }
+
+        @Override
+        public LocalCacheValue getOwner() {
+            return owner;
+        }
+    }
+
+    /**
+     * 弱引用
+     */
+    private static final class WeakValueReference extends WeakReference<Object> implements ValueReference {
+        private final LocalCacheValue owner;
+
+        WeakValueReference(LocalCacheValue owner, Object value, ReferenceQueue<Object> referenceQueue) {
+            super(value, referenceQueue);
+            this.owner = owner;
+        }
+
+        @Override
+        public LocalCacheValue getOwner() {
+            return owner;
+        }
+    }
 }
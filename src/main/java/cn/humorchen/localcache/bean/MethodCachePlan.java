@@ -0,0 +1,303 @@
+package cn.humorchen.localcache.bean;
+
+import cn.hutool.core.util.StrUtil;
+import cn.humorchen.localcache.LocalCache;
+import cn.humorchen.localcache.LocalCacheBatch;
+import cn.humorchen.localcache.LocalCacheMicroBatcher;
+import cn.humorchen.localcache.LocalCacheSizeIndex;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
+import cn.humorchen.localcache.LocalCacheValueExpiry;
+import cn.humorchen.localcache.enums.AsyncReturnTypeEnum;
+import cn.humorchen.localcache.enums.CopyResultStrategy;
+import cn.humorchen.localcache.enums.ValueStrengthEnum;
+import cn.humorchen.localcache.interfaces.ILocalCacheKeyEncoder;
+import cn.humorchen.localcache.interfaces.ILocalCacheMethodInvoker;
+import cn.humorchen.localcache.interfaces.ILocalCacheResultCopier;
+import cn.humorchen.localcache.interfaces.Impl.MethodHandleInvoker;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/5
+ * description: 方法缓存的执行计划
+ * 每个被代理方法只解析一次（注解、方法名、缓存对象、编码器、调用器、拷贝器、长度限制），切面命中缓存时不再做反射和字符串拼接
+ **/
+@Getter
+public class MethodCachePlan {
+    /**
+     * 被代理方法
+     */
+    private final Method method;
+    /**
+     * 被代理方法用到的注解
+     */
+    private final LocalCache localCache;
+    /**
+     * 方法全限定名（或注解里的缓存名）
+     */
+    private final String methodKey;
+    /**
+     * 方法id，methodKey驻留后的整数，key比对时使用
+     */
+    private final int methodId;
+    /**
+     * 方法的缓存对象
+     */
+    private final Cache<LocalCacheKey, LocalCacheValue> cache;
+    /**
+     * 方法返回值的异步类型
+     */
+    private final AsyncReturnTypeEnum asyncReturnType;
+    /**
+     * 异步方法的缓存对象，同步方法为空；此时cache为它的同步视图
+     */
+    private final AsyncCache<LocalCacheKey, LocalCacheValue> asyncCache;
+    /**
+     * key参数编码器
+     */
+    private final ILocalCacheKeyEncoder keyEncoder;
+    /**
+     * 被代理方法的调用器
+     */
+    private final ILocalCacheMethodInvoker invoker;
+    /**
+     * 结果拷贝器，为空代表不拷贝
+     */
+    private final ILocalCacheResultCopier copier;
+    /**
+     * key最大长度（全局配置和注解取小），0 无限制
+     */
+    private final int maxKeyLength;
+    /**
+     * value最大长度（全局配置和注解取小），0 无限制
+     */
+    private final int maxValueLength;
+    /**
+     * 是否合并并发加载
+     */
+    private final boolean singleFlight;
+    /**
+     * 合并加载时等待的最长毫秒数，未配置（负数）时为缓存有效时间
+     */
+    private final long singleFlightWaitMillis;
+    /**
+     * 批量缓存注解，非批量方法为空
+     */
+    private final LocalCacheBatch batch;
+    /**
+     * 批量缓存id集合参数的类型
+     */
+    private final Class<?> batchArgType;
+    /**
+     * 跨调用方合并批量加载器，未配置batchLoader为空
+     */
+    private final LocalCacheMicroBatcher microBatcher;
+    /**
+     * 是否缓存null返回值
+     */
+    private final boolean cacheNull;
+    /**
+     * 是否把空返回值当作null返回值处理
+     */
+    private final boolean cacheEmpty;
+    /**
+     * 普通值的有效时间（纳秒）
+     */
+    private final long expireNanos;
+    /**
+     * 负缓存的有效时间（纳秒）
+     */
+    private final long negativeExpireNanos;
+    /**
+     * 过期后继续返回旧值并异步刷新的时间窗口（纳秒），0 不开启
+     */
+    private final long staleWhileRevalidateNanos;
+    /**
+     * 过期后加载报错时返回旧值的时间窗口（纳秒），0 不开启
+     */
+    private final long staleIfErrorNanos;
+    /**
+     * 正在加载中的key（合并加载、过期旧值的异步刷新共用）
+     */
+    private final ConcurrentMap<LocalCacheKey, CompletableFuture<LocalCacheValue>> inFlightLoads = new ConcurrentHashMap<>();
+    /**
+     * 被合并（共享其他线程加载结果）的加载次数
+     */
+    private final LongAdder coalescedLoadCount = new LongAdder();
+    /**
+     * 缓存的内存占用（字节），写入时累加、移除监听器扣减
+     */
+    private final LongAdder usedByteSize = new LongAdder();
+    /**
+     * 按内存占用分桶的索引，只有使用大内存优先淘汰（SIZE_MAX_FIRST）的缓存才维护，否则为空
+     */
+    private final LocalCacheSizeIndex sizeIndex;
+    /**
+     * 全局内存限制下的优先级（权重）
+     */
+    private final int priority;
+    /**
+     * 全局内存限制下保留的最小内存（字节），0 不保留
+     */
+    private final long minReservedByteSize;
+    /**
+     * 缓存值的引用强度
+     */
+    private final ValueStrengthEnum valueStrength;
+    /**
+     * 是否正在清理内存，同一个缓存同时只有一个清理任务
+     */
+    private final AtomicBoolean cleaning = new AtomicBoolean();
+
+    public MethodCachePlan(Method method, LocalCache localCache, String methodKey, int methodId, Cache<LocalCacheKey, LocalCacheValue> cache,
+                           AsyncCache<LocalCacheKey, LocalCacheValue> asyncCache, ILocalCacheKeyEncoder keyEncoder, int maxKeyLength, int maxValueLength, boolean sizeIndexed) {
+        this.method = method;
+        this.localCache = localCache;
+        this.methodKey = methodKey;
+        this.methodId = methodId;
+        this.cache = cache;
+        this.asyncCache = asyncCache;
+        this.asyncReturnType = asyncCache != null ? AsyncReturnTypeEnum.of(method.getReturnType()) : AsyncReturnTypeEnum.NONE;
+        this.keyEncoder = keyEncoder;
+        this.invoker = MethodHandleInvoker.create(method);
+        CopyResultStrategy copyResultStrategy = localCache.copyResultStrategy();
+        this.copier = copyResultStrategy != null && copyResultStrategy != CopyResultStrategy.NONE ? copyResultStrategy.getCopier() : null;
+        this.maxKeyLength = maxKeyLength;
+        this.maxValueLength = maxValueLength;
+        // 自动刷新缓存默认开启合并加载
+        this.singleFlight = localCache.singleFlight() || localCache.refreshAfterWrite() > 0;
+        this.singleFlightWaitMillis = localCache.singleFlightWaitMillis() >= 0 ? localCache.singleFlightWaitMillis() : Math.max(localCache.timeUnit().toMillis(localCache.expireAfterWrite()), 1);
+        this.batch = method.getAnnotation(LocalCacheBatch.class);
+        this.batchArgType = batch != null ? method.getParameterTypes()[batch.argIndex()] : null;
+        this.microBatcher = asyncCache == null && batch == null && StrUtil.isNotBlank(localCache.batchLoader()) ? new LocalCacheMicroBatcher(this) : null;
+        this.cacheNull = localCache.cacheNull();
+        this.cacheEmpty = localCache.cacheEmpty();
+        this.expireNanos = LocalCacheValueExpiry.expireNanos(localCache);
+        this.negativeExpireNanos = LocalCacheValueExpiry.negativeExpireNanos(localCache);
+        // 异步返回值的方法不支持返回过期旧值
+        this.staleWhileRevalidateNanos = asyncCache == null ? localCache.timeUnit().toNanos(Math.max(localCache.staleWhileRevalidateFor(), 0)) : 0;
+        this.staleIfErrorNanos = asyncCache == null ? localCache.timeUnit().toNanos(Math.max(localCache.staleIfErrorFor(), 0)) : 0;
+        this.sizeIndex = sizeIndexed ? new LocalCacheSizeIndex() : null;
+        this.priority = localCache.priority();
+        this.minReservedByteSize = LocalCacheSizeUtil.parseByteSize(localCache.minReservedMemory());
+        this.valueStrength = localCache.valueStrength() != null ? localCache.valueStrength() : ValueStrengthEnum.SOFT;
+    }
+
+    /**
+     * 开始清理内存，已有清理在执行时返回false
+     *
+     * @return
+     */
+    public boolean tryStartCleaning() {
+        return cleaning.compareAndSet(false, true);
+    }
+
+    /**
+     * 清理内存结束
+     */
+    public void finishCleaning() {
+        cleaning.set(false);
+    }
+
+    /**
+     * 两个长度限制取小，0 代表无限制
+     *
+     * @param globalMax
+     * @param annotationMax
+     * @return
+     */
+    public static int minLimit(int globalMax, int annotationMax) {
+        if (globalMax > 0 && annotationMax > 0) {
+            return Math.min(globalMax, annotationMax);
+        }
+        return Math.max(globalMax, annotationMax);
+    }
+
+    /**
+     * key是否需要写入到缓存
+     *
+     * @param key
+     * @return
+     */
+    public boolean isKeyNeedWriteToCache(LocalCacheKey key) {
+        return maxKeyLength <= 0 || key.getArgsLength() <= maxKeyLength;
+    }
+
+    /**
+     * 是否开启了过期后返回旧值
+     *
+     * @return
+     */
+    public boolean isStaleEnabled() {
+        return staleWhileRevalidateNanos > 0 || staleIfErrorNanos > 0;
+    }
+
+    /**
+     * 值的逻辑过期时间（System.nanoTime）
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public long getExpireAtNanos(LocalCacheValue localCacheValue) {
+        return localCacheValue.getWriteNanos() + (localCacheValue.isNegative() ? negativeExpireNanos : expireNanos);
+    }
+
+    /**
+     * 值是否已逻辑过期
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public boolean isExpired(LocalCacheValue localCacheValue) {
+        return System.nanoTime() - getExpireAtNanos(localCacheValue) > 0;
+    }
+
+    /**
+     * 已过期的值是否还在stale-while-revalidate窗口内
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public boolean isInStaleWhileRevalidate(LocalCacheValue localCacheValue) {
+        return staleWhileRevalidateNanos > 0 && System.nanoTime() - getExpireAtNanos(localCacheValue) <= staleWhileRevalidateNanos;
+    }
+
+    /**
+     * 已过期的值是否还在stale-if-error窗口内
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public boolean isInStaleIfError(LocalCacheValue localCacheValue) {
+        return staleIfErrorNanos > 0 && System.nanoTime() - getExpireAtNanos(localCacheValue) <= staleIfErrorNanos;
+    }
+
+    /**
+     * 加载的值是否可以写入缓存（null返回值需开启cacheNull）
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public boolean isValueCacheable(LocalCacheValue localCacheValue) {
+        return cacheNull || !localCacheValue.isNullValue();
+    }
+
+    /**
+     * value是否需要写入到缓存
+     *
+     * @param localCacheValue
+     * @return
+     */
+    public boolean isValueNeedWriteToCache(LocalCacheValue localCacheValue) {
+        return maxValueLength <= 0 || localCacheValue.getJsonLength() <= maxValueLength;
+    }
+}
@@ -7,7 +7,6 @@ import cn.humorchen.localcache.*;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
-import com.alibaba.fastjson.JSONObject;
 import com.github.benmanes.caffeine.cache.Cache;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -53,9 +52,13 @@ public interface ILocalCacheCleaner {
                 long cleanSize = expectCleanSize;
                 while (cleanSize > 0) {
                     long cleanOnce = cleanOnce(cache);
+                    if (cleanOnce == 0) {
+                        // 没有可清理的值了（例如只剩负缓存）
+                        break;
+                    }
                     cleanSize = cleanSize - Math.abs(cleanOnce);
                 }
-                return Math.abs(cleanSize) + expectCleanSize;
+                return expectCleanSize - cleanSize;
             }
         }
         return 0;
@@ -63,11 +66,14 @@ public interface ILocalCacheCleaner {
 
     /**
      * 清理缓存
+     * 随机抽取缓存逐个清理，不区分缓存的份额和优先级
      *
      * @param cacheMap
      * @param cacheByteSize
      * @param expectCleanSize
+     * @deprecated 全局内存限制已改由 {@link LocalCacheMemoryArbiter#reclaim(long)} 按公平份额回收
      */
+    @Deprecated
     default long clean(Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap, long cacheByteSize, long expectCleanSize) {
         if (MapUtil.isNotEmpty(cacheMap) && expectCleanSize > 0) {
             long cleanSize = expectCleanSize;
@@ -88,7 +94,7 @@ public interface ILocalCacheCleaner {
                     ConcurrentMap<@NonNull LocalCacheKey, @NonNull LocalCacheValue> map = cache.asMap();
                     if (MapUtil.isNotEmpty(map)) {
                         // 对抽中的cache执行一次清理
-                        long actualClean = clean(cache, LocalCacheSizeUtil.getMethodCacheByteSize(cache), 1);
+                        long actualClean = clean(cache, LocalCacheSizeUtil.getMethodCacheUsedByteSize(cache), 1);
                         cleanSize = cleanSize - Math.abs(actualClean);
                         if (actualClean == 0) {
                             // 没有减少cleanSize
@@ -111,7 +117,7 @@ public interface ILocalCacheCleaner {
     default void cleanKey(Cache<LocalCacheKey, LocalCacheValue> cache, LocalCacheKey localCacheKey) {
         if (cache != null && localCacheKey != null) {
             cache.invalidate(localCacheKey);
-            LocalCacheLogger.debug(null, "本地方法缓存内存回收 淘汰Key：{}", JSONObject.toJSONString(localCacheKey));
+            LocalCacheLogger.debug(null, "本地方法缓存内存回收 淘汰Key：{}", localCacheKey);
         }
     }
 
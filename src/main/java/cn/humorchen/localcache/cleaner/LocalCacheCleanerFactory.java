@@ -1,11 +1,13 @@
 package cn.humorchen.localcache.cleaner;
 
 import cn.humorchen.localcache.LocalCacheLogger;
+import cn.humorchen.localcache.cleaner.impl.CostAwareCleaner;
 import cn.humorchen.localcache.cleaner.impl.LruCleaner;
 import cn.humorchen.localcache.cleaner.impl.RandomCleaner;
+import cn.humorchen.localcache.cleaner.impl.SampledLfuCleaner;
+import cn.humorchen.localcache.cleaner.impl.SampledLruCleaner;
 import cn.humorchen.localcache.cleaner.impl.SizeMaxFirstCleaner;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
-import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Map;
@@ -44,8 +46,17 @@ public class LocalCacheCleanerFactory {
                 case RANDOM: {
                     return new RandomCleaner();
                 }
+                case SAMPLED_LRU: {
+                    return new SampledLruCleaner();
+                }
+                case SAMPLED_LFU: {
+                    return new SampledLfuCleaner();
+                }
+                case COST_AWARE: {
+                    return new CostAwareCleaner();
+                }
             }
-            LocalCacheLogger.error(null, "该本地缓存清理策略无法找到对应实现，cleanStrategyEnum：{}", JSONObject.toJSONString(finalCleanStrategyEnum));
+            LocalCacheLogger.error(null, "该本地缓存清理策略无法找到对应实现，cleanStrategyEnum：{}", finalCleanStrategyEnum);
             // 默认用LRU
             return new LruCleaner();
         });
@@ -0,0 +1,196 @@
+package cn.humorchen.localcache.cleaner.impl;
+
+import cn.humorchen.localcache.LocalCacheLogger;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/17
+ * description: 抽样淘汰（参考redis的近似LRU/LFU），淘汰分数由子类决定
+ * 每淘汰一个值只抽样SAMPLE_SIZE个值放入淘汰候选池，从池中选最该淘汰的，耗时与缓存大小无关
+ * 抽样用每个缓存一个的滚动迭代器，接着上次的位置往后取，取完从头开始；缓存按hash分布，连续取出的值与访问顺序无关，相当于随机抽样
+ * 候选池跨多次清理保留，每次选择时重新计算分数，期间被访问过的值自然不再优先
+ **/
+public abstract class AbstractSampledCleaner implements ILocalCacheCleaner {
+    /**
+     * 每次抽样的值个数
+     */
+    private static final int SAMPLE_SIZE = 5;
+    /**
+     * 每次抽样最多遍历的值个数（跳过负缓存）
+     */
+    private static final int MAX_SAMPLE_SCAN = SAMPLE_SIZE * 4;
+    /**
+     * 淘汰候选池大小
+     */
+    private static final int POOL_SIZE = 16;
+    /**
+     * 访问次数衰减周期，每空闲一个周期访问次数减半
+     */
+    private static final long DECAY_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * 每个缓存的抽样状态，缓存不再使用时随之回收
+     */
+    private final Map<Cache<LocalCacheKey, LocalCacheValue>, SampleState> sampleStates = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 淘汰分数，越大越优先淘汰
+     *
+     * @param localCacheValue
+     * @param nowNanos
+     * @return
+     */
+    protected abstract long evictionScore(LocalCacheValue localCacheValue, long nowNanos);
+
+    /**
+     * 按空闲时间衰减后的访问次数，避免过去的热点值一直不被淘汰
+     *
+     * @param localCacheValue
+     * @param nowNanos
+     * @return
+     */
+    protected static long decayedHitCount(LocalCacheValue localCacheValue, long nowNanos) {
+        long idleNanos = Math.max(nowNanos - localCacheValue.getLastAccessNanos(), 0);
+        return localCacheValue.getHitCount() >>> (int) Math.min(idleNanos / DECAY_PERIOD_NANOS, 31);
+    }
+
+    /**
+     * 清理一次
+     *
+     * @param cache
+     * @return
+     */
+    @Override
+    public long cleanOnce(Cache<LocalCacheKey, LocalCacheValue> cache) {
+        if (cache == null) {
+            return 0L;
+        }
+        SampleState state = sampleStates.computeIfAbsent(cache, c -> new SampleState());
+        synchronized (state) {
+            // 池里的值可能已被移除或替换，换下一个，次数有限
+            for (int i = 0; i <= POOL_SIZE; i++) {
+                long now = System.nanoTime();
+                sample(cache, state, now);
+                LocalCacheValue localCacheValue = state.pollBest(this, now);
+                if (localCacheValue == null) {
+                    return 0L;
+                }
+                LocalCacheKey key = localCacheValue.getKey();
+                if (!localCacheValue.isRemoved() && cache.asMap().remove(key, localCacheValue)) {
+                    LocalCacheLogger.debug(null, "本地方法缓存内存回收 淘汰Key：{}", key);
+                    return LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+                }
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * 从滚动迭代器抽样放入候选池
+     *
+     * @param cache
+     * @param state
+     * @param now
+     */
+    private void sample(Cache<LocalCacheKey, LocalCacheValue> cache, SampleState state, long now) {
+        int sampled = 0;
+        boolean restarted = false;
+        for (int scanned = 0; sampled < SAMPLE_SIZE && scanned < MAX_SAMPLE_SCAN; scanned++) {
+            if (state.cursor == null || !state.cursor.hasNext()) {
+                if (restarted) {
+                    // 整个缓存都取过一遍了
+                    return;
+                }
+                state.cursor = cache.asMap().values().iterator();
+                restarted = true;
+                if (!state.cursor.hasNext()) {
+                    return;
+                }
+            }
+            LocalCacheValue localCacheValue = state.cursor.next();
+            // 负缓存不计入内存统计也不参与清理
+            if (!localCacheValue.isNegative()) {
+                state.offer(this, localCacheValue, now);
+                sampled++;
+            }
+        }
+    }
+
+    /**
+     * 单个缓存的抽样状态
+     */
+    private static class SampleState {
+        /**
+         * 滚动迭代器
+         */
+        private Iterator<LocalCacheValue> cursor;
+        /**
+         * 淘汰候选池
+         */
+        private final LocalCacheValue[] pool = new LocalCacheValue[POOL_SIZE];
+        private int poolSize;
+
+        /**
+         * 放入候选池，池满时替换掉分数最小的（比它还小则不放入）
+         *
+         * @param cleaner
+         * @param localCacheValue
+         * @param now
+         */
+        void offer(AbstractSampledCleaner cleaner, LocalCacheValue localCacheValue, long now) {
+            int worst = -1;
+            long worstScore = Long.MAX_VALUE;
+            for (int i = 0; i < poolSize; i++) {
+                if (pool[i] == localCacheValue) {
+                    return;
+                }
+                long score = cleaner.evictionScore(pool[i], now);
+                if (score < worstScore) {
+                    worstScore = score;
+                    worst = i;
+                }
+            }
+            if (poolSize < POOL_SIZE) {
+                pool[poolSize++] = localCacheValue;
+            } else if (cleaner.evictionScore(localCacheValue, now) > worstScore) {
+                pool[worst] = localCacheValue;
+            }
+        }
+
+        /**
+         * 取出池中分数最大的
+         *
+         * @param cleaner
+         * @param now
+         * @return
+         */
+        LocalCacheValue pollBest(AbstractSampledCleaner cleaner, long now) {
+            int best = -1;
+            long bestScore = Long.MIN_VALUE;
+            for (int i = 0; i < poolSize; i++) {
+                long score = cleaner.evictionScore(pool[i], now);
+                if (best < 0 || score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            LocalCacheValue localCacheValue = pool[best];
+            pool[best] = pool[--poolSize];
+            pool[poolSize] = null;
+            return localCacheValue;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cn.humorchen.localcache.cleaner.impl;
+
+import cn.humorchen.localcache.LocalCacheSizeUtil;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.enums.CleanStrategyEnum;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/18
+ * description: 成本感知清理（GreedyDual-Size-Frequency）
+ * 值的保留价值 = 访问次数 × 加载耗时 / 内存占用，即每字节内存能节省的加载耗时，抽样淘汰价值最低的
+ * 访问次数按空闲时间衰减作为老化，避免过去加载慢的热点值一直不被淘汰
+ **/
+public class CostAwareCleaner extends AbstractSampledCleaner {
+    /**
+     * 价值放大倍数，保留每字节小于1纳秒的精度
+     */
+    private static final double VALUE_SCALE = 1024;
+
+    /**
+     * 清理策略
+     *
+     * @return
+     */
+    @Override
+    public CleanStrategyEnum getCleanStrategyEnum() {
+        return CleanStrategyEnum.COST_AWARE;
+    }
+
+    /**
+     * 保留价值越低越优先淘汰
+     * 加载本身算一次访问；加载耗时未知的按1纳秒计算
+     *
+     * @param localCacheValue
+     * @param nowNanos
+     * @return
+     */
+    @Override
+    protected long evictionScore(LocalCacheValue localCacheValue, long nowNanos) {
+        long frequency = decayedHitCount(localCacheValue, nowNanos) + 1;
+        long byteSize = Math.max(LocalCacheSizeUtil.getEntryByteSize(localCacheValue), 1);
+        double value = (double) frequency * Math.max(localCacheValue.getLoadNanos(), 1) / byteSize * VALUE_SCALE;
+        return -(long) Math.min(value, Long.MAX_VALUE);
+    }
+}
@@ -1,17 +1,24 @@
 package cn.humorchen.localcache.cleaner.impl;
 
+import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
 import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+
 /**
  * @author  humorchen
  * date: 2023/12/28
  * description: LRU算法清理
+ * 使用caffeine维护的淘汰顺序批量取最冷的值淘汰，不再每淘汰一个遍历一次整个缓存
  **/
 @Component
 @Slf4j
@@ -27,6 +34,15 @@ public class LruCleaner implements ILocalCacheCleaner {
     }
 
 
+    /**
+     * 每次从淘汰顺序中取出的最少条数
+     */
+    private static final int MIN_BATCH = 16;
+    /**
+     * 每次从淘汰顺序中取出的最多条数
+     */
+    private static final int MAX_BATCH = 4096;
+
     /**
      * 清理一次
      *
@@ -35,16 +51,76 @@ public class LruCleaner implements ILocalCacheCleaner {
      */
     @Override
     public long cleanOnce(Cache<LocalCacheKey, LocalCacheValue> cache) {
-        // 由于刚超出内存限制将立即触发进行清理，因此超出的内存数不会很多，不用全排序（n*log n）后删除,也不维护LRU结构，而采用删最大值方法（删一次为n），每次过一遍，减少遍历次数
-        LocalCacheValue localCacheValue = cache.asMap().values().stream().max((v1, v2) -> (int) (v2.getLastAccessTimestamp() - v1.getLastAccessTimestamp())).orElse(null);
-        if (localCacheValue != null) {
-            LocalCacheKey key = localCacheValue.getKey();
-            cleanKey(cache, key);
-            int jsonLength = localCacheValue.getJsonLength();
-            return jsonLength * 2L;
-        }
-        return 0L;
+        return clean(cache, 0, 1);
     }
 
+    /**
+     * 清理缓存
+     * 按caffeine的淘汰顺序（W-TinyLFU，最不常用、最久未访问的在前）取出最冷的一批逐个淘汰，耗时与淘汰条数成正比，不遍历整个缓存
+     *
+     * @param cache
+     * @param cacheByteSize
+     * @param expectCleanSize
+     * @return 实际清理的大小
+     */
+    @Override
+    public long clean(Cache<LocalCacheKey, LocalCacheValue> cache, long cacheByteSize, long expectCleanSize) {
+        if (cache == null || expectCleanSize <= 0) {
+            return 0;
+        }
+        Optional<Policy.Eviction<LocalCacheKey, LocalCacheValue>> eviction = cache.policy().eviction();
+        if (!eviction.isPresent()) {
+            return cleanByScan(cache, expectCleanSize);
+        }
+        // 按平均大小估算要淘汰的条数
+        long estimatedSize = cache.estimatedSize();
+        long avgByteSize = estimatedSize > 0 && cacheByteSize > 0 ? Math.max(cacheByteSize / estimatedSize, 1) : 1;
+        int batch = (int) Math.min(Math.max(expectCleanSize / avgByteSize + 1, MIN_BATCH), MAX_BATCH);
+        long cleanSize = 0;
+        while (cleanSize < expectCleanSize) {
+            Map<LocalCacheKey, LocalCacheValue> coldest = eviction.get().coldest(batch);
+            boolean cleaned = false;
+            for (Map.Entry<LocalCacheKey, LocalCacheValue> entry : coldest.entrySet()) {
+                LocalCacheValue localCacheValue = entry.getValue();
+                // 负缓存不计入内存统计也不参与清理
+                if (localCacheValue.isNegative()) {
+                    continue;
+                }
+                cleanKey(cache, entry.getKey());
+                cleanSize += LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+                cleaned = true;
+                if (cleanSize >= expectCleanSize) {
+                    break;
+                }
+            }
+            if (!cleaned) {
+                // 取出的都是负缓存，扩大范围再取，已取完则结束
+                if (coldest.size() < batch || batch >= MAX_BATCH) {
+                    break;
+                }
+                batch = Math.min(batch * 2, MAX_BATCH);
+            }
+        }
+        return cleanSize;
+    }
 
+    /**
+     * 没有淘汰策略（未设置容量限制）的缓存，遍历找最久没访问的淘汰
+     *
+     * @param cache
+     * @param expectCleanSize
+     * @return 实际清理的大小
+     */
+    private long cleanByScan(Cache<LocalCacheKey, LocalCacheValue> cache, long expectCleanSize) {
+        long cleanSize = 0;
+        while (cleanSize < expectCleanSize) {
+            LocalCacheValue localCacheValue = cache.asMap().values().stream().filter(v -> !v.isNegative()).min(Comparator.comparingLong(LocalCacheValue::getLastAccessNanos)).orElse(null);
+            if (localCacheValue == null) {
+                break;
+            }
+            cleanKey(cache, localCacheValue.getKey());
+            cleanSize += LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+        }
+        return cleanSize;
+    }
 }
@@ -2,6 +2,7 @@ package cn.humorchen.localcache.cleaner.impl;
 
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.RandomUtil;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
 import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
@@ -34,13 +35,15 @@ public class RandomCleaner implements ILocalCacheCleaner {
      */
     @Override
     public long cleanOnce(Cache<LocalCacheKey, LocalCacheValue> cache) {
-        ArrayList<LocalCacheValue> localCacheValues = new ArrayList<>(cache.asMap().values());
+        ArrayList<LocalCacheValue> localCacheValues = nonNegativeValues(cache);
+        if (localCacheValues.isEmpty()) {
+            return 0L;
+        }
         LocalCacheValue localCacheValue = localCacheValues.get(RandomUtil.randomInt(localCacheValues.size()));
         if (localCacheValue != null) {
             LocalCacheKey key = localCacheValue.getKey();
             cleanKey(cache, key);
-            int jsonLength = localCacheValue.getJsonLength();
-            return jsonLength * 2L;
+            return LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
         }
         return 0L;
     }
@@ -55,19 +58,35 @@ public class RandomCleaner implements ILocalCacheCleaner {
      */
     @Override
     public long clean(Cache<LocalCacheKey, LocalCacheValue> cache, long cacheByteSize, long expectCleanSize) {
-        ArrayList<LocalCacheValue> localCacheValues = new ArrayList<>(cache.asMap().values());
+        ArrayList<LocalCacheValue> localCacheValues = nonNegativeValues(cache);
         long cleanSize = expectCleanSize;
         while (cleanSize > 0 && CollectionUtil.isNotEmpty(localCacheValues)) {
-            LocalCacheValue localCacheValue = localCacheValues.get(RandomUtil.randomInt(localCacheValues.size()));
-            if (localCacheValue != null) {
-                LocalCacheKey key = localCacheValue.getKey();
-                cleanKey(cache, key);
-                int jsonLength = localCacheValue.getJsonLength();
-                cleanSize = cleanSize - jsonLength * 2L;
-            } else {
-                break;
+            // 抽中的移到末尾删掉，不重复抽中
+            int index = RandomUtil.randomInt(localCacheValues.size());
+            int last = localCacheValues.size() - 1;
+            LocalCacheValue localCacheValue = localCacheValues.get(index);
+            localCacheValues.set(index, localCacheValues.get(last));
+            localCacheValues.remove(last);
+            LocalCacheKey key = localCacheValue.getKey();
+            cleanKey(cache, key);
+            cleanSize = cleanSize - LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+        }
+        return expectCleanSize - cleanSize;
+    }
+
+    /**
+     * 可清理的缓存值，负缓存不计入内存统计也不参与清理
+     *
+     * @param cache
+     * @return
+     */
+    private ArrayList<LocalCacheValue> nonNegativeValues(Cache<LocalCacheKey, LocalCacheValue> cache) {
+        ArrayList<LocalCacheValue> localCacheValues = new ArrayList<>(cache.asMap().size());
+        for (LocalCacheValue localCacheValue : cache.asMap().values()) {
+            if (!localCacheValue.isNegative()) {
+                localCacheValues.add(localCacheValue);
             }
         }
-        return Math.abs(cleanSize) + expectCleanSize;
+        return localCacheValues;
     }
 }
@@ -0,0 +1,41 @@
+package cn.humorchen.localcache.cleaner.impl;
+
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.enums.CleanStrategyEnum;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/17
+ * description: 抽样近似LFU清理，淘汰候选池中访问次数最少的
+ * 访问次数按空闲时间衰减（每空闲一个周期减半），避免过去的热点值一直不被淘汰；次数相同时淘汰空闲久的
+ **/
+public class SampledLfuCleaner extends AbstractSampledCleaner {
+    /**
+     * 空闲时间参与比较的上限（低32位，约4.3秒），超过的视为相同
+     */
+    private static final long IDLE_MASK = 0xFFFFFFFFL;
+
+    /**
+     * 清理策略
+     *
+     * @return
+     */
+    @Override
+    public CleanStrategyEnum getCleanStrategyEnum() {
+        return CleanStrategyEnum.SAMPLED_LFU;
+    }
+
+    /**
+     * 衰减后的访问次数越少越优先淘汰，高32位为次数取反，低32位为空闲时间
+     *
+     * @param localCacheValue
+     * @param nowNanos
+     * @return
+     */
+    @Override
+    protected long evictionScore(LocalCacheValue localCacheValue, long nowNanos) {
+        long idleNanos = Math.max(nowNanos - localCacheValue.getLastAccessNanos(), 0);
+        long decayed = decayedHitCount(localCacheValue, nowNanos);
+        return ((Integer.MAX_VALUE - decayed) << 32) | Math.min(idleNanos, IDLE_MASK);
+    }
+}
@@ -0,0 +1,33 @@
+package cn.humorchen.localcache.cleaner.impl;
+
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.enums.CleanStrategyEnum;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/17
+ * description: 抽样近似LRU清理，淘汰候选池中空闲最久的
+ **/
+public class SampledLruCleaner extends AbstractSampledCleaner {
+    /**
+     * 清理策略
+     *
+     * @return
+     */
+    @Override
+    public CleanStrategyEnum getCleanStrategyEnum() {
+        return CleanStrategyEnum.SAMPLED_LRU;
+    }
+
+    /**
+     * 空闲时间越长越优先淘汰
+     *
+     * @param localCacheValue
+     * @param nowNanos
+     * @return
+     */
+    @Override
+    protected long evictionScore(LocalCacheValue localCacheValue, long nowNanos) {
+        return nowNanos - localCacheValue.getLastAccessNanos();
+    }
+}
@@ -1,7 +1,12 @@
 package cn.humorchen.localcache.cleaner.impl;
 
+import cn.humorchen.localcache.LocalCacheContext;
+import cn.humorchen.localcache.LocalCacheLogger;
+import cn.humorchen.localcache.LocalCacheSizeIndex;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
 import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -14,6 +19,8 @@ import java.util.Comparator;
  * @author  humorchen
  * date: 2023/12/28
  * description: 内存大的优先清理
+ * 维护了大小索引的缓存从索引取最大值，O(1)；否则遍历整个缓存
+ * @see LocalCacheSizeIndex
  **/
 @Component
 @Slf4j
@@ -38,15 +45,38 @@ public class SizeMaxFirstCleaner implements ILocalCacheCleaner {
     @Override
     public long cleanOnce(Cache<LocalCacheKey, LocalCacheValue> cache) {
         if (cache != null) {
-            LocalCacheValue localCacheValue = cache.asMap().values().stream().max(Comparator.comparingInt(LocalCacheValue::getJsonLength)).orElse(null);
+            MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(LocalCacheContext.getCacheName(cache));
+            LocalCacheSizeIndex sizeIndex = plan != null ? plan.getSizeIndex() : null;
+            if (sizeIndex != null) {
+                return cleanByIndex(cache, sizeIndex);
+            }
+            LocalCacheValue localCacheValue = cache.asMap().values().stream().filter(v -> !v.isNegative()).max(Comparator.comparingLong(LocalCacheValue::getByteSize)).orElse(null);
             if (localCacheValue != null) {
                 LocalCacheKey key = localCacheValue.getKey();
                 cleanKey(cache, key);
-                int jsonLength = localCacheValue.getJsonLength();
-                return jsonLength * 2L;
+                return LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
             }
         }
         return 0L;
     }
 
+    /**
+     * 从大小索引取出最大的值淘汰
+     * 索引里的值可能已被替换（写入后处理和移除监听器都是异步的），只移除仍在缓存里的同一个值
+     *
+     * @param cache
+     * @param sizeIndex
+     * @return
+     */
+    private long cleanByIndex(Cache<LocalCacheKey, LocalCacheValue> cache, LocalCacheSizeIndex sizeIndex) {
+        LocalCacheValue localCacheValue;
+        while ((localCacheValue = sizeIndex.pollLargest()) != null) {
+            LocalCacheKey key = localCacheValue.getKey();
+            if (cache.asMap().remove(key, localCacheValue)) {
+                LocalCacheLogger.debug(null, "本地方法缓存内存回收 淘汰Key：{}", key);
+                return LocalCacheSizeUtil.getEntryByteSize(localCacheValue);
+            }
+        }
+        return 0L;
+    }
 }
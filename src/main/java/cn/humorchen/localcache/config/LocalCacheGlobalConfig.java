@@ -1,7 +1,7 @@
 package cn.humorchen.localcache.config;
 
-import cn.hutool.core.io.unit.DataSizeUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import cn.humorchen.localcache.listener.LocalCacheDefaultLogRemovalListener;
 import lombok.Data;
@@ -31,6 +31,14 @@ public class LocalCacheGlobalConfig {
      * 是否全局禁用，禁用后即使有缓存注解也会失效，手动编码加的缓存是无法通过该配置禁用的
      */
     private Boolean disabled = false;
+    /**
+     * 启动时预先初始化所有注解方法的缓存（检查注解配置、并行创建缓存），关闭后在方法第一次调用时初始化
+     */
+    private Boolean eagerInit = true;
+    /**
+     * 启动时初始化方法缓存最多等待的毫秒数，超时后不再等待，未完成的方法在第一次调用时初始化
+     */
+    private Long eagerInitTimeoutMillis = 60000L;
     /**
      * 核心线程池 核心线程数
      */
@@ -48,6 +56,23 @@ public class LocalCacheGlobalConfig {
      * 例如 本地缓存  最后生成的 【本地缓存】thread1
      */
     private String threadPoolThreadNamePrefix = "本地缓存";
+    /**
+     * 每个缓存同时执行的刷新任务数上限（舱壁），超出时跳过本次刷新继续使用旧值
+     * 避免一个缓存的刷新风暴占满共用的刷新线程池
+     */
+    private Integer refreshBulkhead = 16;
+    /**
+     * 刷新线程池的线程类型（加载、刷新、caffeine内部任务）
+     * platform 平台线程池，按上面的 threadPool* 配置创建
+     * virtual 虚拟线程，适合阻塞在JDBC/HTTP上的加载方法，需JDK21及以上，不支持时退回平台线程池
+     *
+     * @see cn.humorchen.localcache.enums.ExecutorTypeEnum
+     */
+    private String executor = "platform";
+    /**
+     * 虚拟线程时每个缓存同时执行的刷新任务数上限（舱壁），虚拟线程不排队，并发只由舱壁限制
+     */
+    private Integer virtualRefreshBulkhead = 256;
     /**
      * 本地缓存key被移除的listener
      * 填类的全限定路径
@@ -57,16 +82,59 @@ public class LocalCacheGlobalConfig {
      * @see LocalCacheDefaultLogRemovalListener
      */
     private String keyRemovalListener = "";
+    /**
+     * 方法缓存key的参数编码器
+     * 填类的全限定路径，需实现 ILocalCacheKeyEncoder 且有无参构造器
+     * 默认为
+     *
+     * @see cn.humorchen.localcache.interfaces.Impl.Murmur3KeyEncoder
+     */
+    private String keyEncoder = "";
+    /**
+     * 缓存值内存占用估算器
+     * 填类的全限定路径，需实现 ILocalCacheSizeEstimator 且有无参构造器
+     * 默认为对象图遍历估算，启动参数加上 -javaagent:LocalCache.jar 时为Instrumentation精确计算
+     * 兼容旧版本按json长度计算可填 cn.humorchen.localcache.interfaces.Impl.JsonLengthSizeEstimator
+     *
+     * @see cn.humorchen.localcache.interfaces.Impl.ReflectiveSizeEstimator
+     * @see cn.humorchen.localcache.interfaces.Impl.InstrumentationSizeEstimator
+     */
+    private String sizeEstimator = "";
     /**
      * 单条日志最大打印长度
      * 默认正数最大值
      * 当日志要打印的长度大于这个数值时会截取前n个字符打印
      */
     private Integer oneLogMaxLength;
+    /**
+     * 是否异步打印debug日志
+     * 开启后debug日志的格式化和输出由后台线程完成，不占用业务线程
+     */
+    private Boolean asyncLog = false;
+    /**
+     * 异步日志缓冲区容量，写满后新日志会被丢弃
+     */
+    private Integer asyncLogBufferSize = 4096;
+    /**
+     * 是否异步处理缓存写入后的工作（估算内存占用、内存统计、put value的钩子）
+     * 开启后业务线程只把缓存值放进队列，由后台线程批量处理
+     */
+    private Boolean postPutAsync = true;
+    /**
+     * 写入后处理队列容量
+     */
+    private Integer postPutQueueSize = 4096;
+    /**
+     * 写入后处理队列满时的处理策略
+     * 例如 CALLER_RUNS
+     *
+     * @see cn.humorchen.localcache.enums.PostPutOverflowPolicyEnum
+     */
+    private String postPutOverflowPolicy = "CALLER_RUNS";
 
     /**
      * 单个Key最大长度，超过了是不会写入到缓存的
-     * 计算的是方法参数的json字符串长度
+     * 计算的是方法参数的估算长度（约等于json字符串长度）
      */
     private Integer oneCacheMaxKeyLength;
     /**
@@ -82,7 +150,7 @@ public class LocalCacheGlobalConfig {
     private Long oneCacheUsedMemoryMaxSizeByte;
     /**
      * 单个缓存使用内存最大限制
-     * 例如 12MB，优先级大于上面这个参数
+     * 例如 12MB 或 按最大堆内存的百分比 5%，优先级大于上面这个参数
      *
      * @see cn.hutool.core.io.unit.DataSize
      */
@@ -95,7 +163,7 @@ public class LocalCacheGlobalConfig {
     private Long allMethodCacheUsedMemoryMaxSizeByte;
     /**
      * 所有方法缓存使用内存最大限制
-     * 例如 12MB，优先级大于上面这个参数
+     * 例如 12MB 或 按最大堆内存的百分比 15%，优先级大于上面这个参数
      *
      * @see cn.hutool.core.io.unit.DataSize
      */
@@ -106,6 +174,28 @@ public class LocalCacheGlobalConfig {
      * @see CleanStrategyEnum#of(String)
      */
     private String cleanStrategy;
+    /**
+     * 内存清理的并行度，每个缓存的清理是独立的任务，在该并行度的ForkJoin线程池里并行执行
+     * 默认 CPU核数和4取小
+     */
+    private Integer cleanParallelism;
+    /**
+     * 是否根据堆内存压力回收缓存
+     * 开启后监听老年代内存池阈值和GC通知，GC后老年代占用过高时立即按比例回收缓存内存，而不是等定时清理
+     */
+    private Boolean memoryPressureEnabled = true;
+    /**
+     * 堆内存压力阈值，GC后老年代占用超过最大值的该比例时开始回收
+     */
+    private Double memoryPressureThreshold = 0.85;
+    /**
+     * 堆内存压力解除阈值，GC后老年代占用低于最大值的该比例时逐步放开回收时设置的临时上限
+     */
+    private Double memoryPressureRelaxThreshold = 0.7;
+    /**
+     * 压力下首次回收的比例（占所有方法缓存内存），持续有压力时每次翻倍，最多回收一半
+     */
+    private Double memoryPressureShedRatio = 0.1;
 
     /**
      * @param oneCacheUsedMemoryMaxSize
@@ -113,7 +203,7 @@ public class LocalCacheGlobalConfig {
     public void setOneCacheUsedMemoryMaxSize(String oneCacheUsedMemoryMaxSize) {
         this.oneCacheUsedMemoryMaxSize = oneCacheUsedMemoryMaxSize;
         if (StrUtil.isNotBlank(oneCacheUsedMemoryMaxSize)) {
-            this.oneCacheUsedMemoryMaxSizeByte = DataSizeUtil.parse(oneCacheUsedMemoryMaxSize);
+            this.oneCacheUsedMemoryMaxSizeByte = LocalCacheSizeUtil.parseByteSize(oneCacheUsedMemoryMaxSize);
         }
     }
 
@@ -125,7 +215,7 @@ public class LocalCacheGlobalConfig {
     public void setAllMethodCacheUsedMemoryMaxSize(String allMethodCacheUsedMemoryMaxSize) {
         this.allMethodCacheUsedMemoryMaxSize = allMethodCacheUsedMemoryMaxSize;
         if (StrUtil.isNotBlank(allMethodCacheUsedMemoryMaxSize)) {
-            this.allMethodCacheUsedMemoryMaxSizeByte = DataSizeUtil.parse(allMethodCacheUsedMemoryMaxSize);
+            this.allMethodCacheUsedMemoryMaxSizeByte = LocalCacheSizeUtil.parseByteSize(allMethodCacheUsedMemoryMaxSize);
         }
     }
 }
@@ -0,0 +1,191 @@
+package cn.humorchen.localcache.enums;
+
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/6
+ * description: 异步返回值类型枚举
+ * 返回异步类型的方法使用caffeine AsyncCache缓存，缓存的是异步结果完成后的值而不是异步对象本身
+ * reactor（Mono、Flux）为可选依赖，通过反射适配，项目未引入时不会加载
+ **/
+@Getter
+public enum AsyncReturnTypeEnum {
+    /**
+     * 同步返回值
+     */
+    NONE("NONE", "同步返回值") {
+        @Override
+        public CompletableFuture<Object> toFuture(Object returned) {
+            return CompletableFuture.completedFuture(returned);
+        }
+
+        @Override
+        public Object fromFuture(CompletableFuture<Object> future) {
+            return future.join();
+        }
+    },
+    /**
+     * CompletableFuture、CompletionStage
+     */
+    COMPLETABLE_FUTURE("COMPLETABLE_FUTURE", "CompletableFuture") {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> toFuture(Object returned) {
+            if (returned == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return ((CompletionStage<Object>) returned).toCompletableFuture();
+        }
+
+        @Override
+        public Object fromFuture(CompletableFuture<Object> future) {
+            // 返回新的future，避免调用方complete共享的future影响其他调用方
+            return future.thenApply(Function.identity());
+        }
+    },
+    /**
+     * reactor Mono
+     */
+    MONO("MONO", "reactor Mono") {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> toFuture(Object returned) {
+            if (returned == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return (CompletableFuture<Object>) invoke(ReactorMethods.MONO_TO_FUTURE, returned);
+        }
+
+        @Override
+        public Object fromFuture(CompletableFuture<Object> future) {
+            return invoke(ReactorMethods.MONO_FROM_FUTURE, null, future);
+        }
+    },
+    /**
+     * reactor Flux，元素收集为List后缓存，命中时重新发射
+     */
+    FLUX("FLUX", "reactor Flux") {
+        @Override
+        @SuppressWarnings("unchecked")
+        public CompletableFuture<Object> toFuture(Object returned) {
+            if (returned == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Object mono = invoke(ReactorMethods.FLUX_COLLECT_LIST, returned);
+            return (CompletableFuture<Object>) invoke(ReactorMethods.MONO_TO_FUTURE, mono);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object fromFuture(CompletableFuture<Object> future) {
+            Object mono = invoke(ReactorMethods.MONO_FROM_FUTURE, null, future);
+            Function<Object, Iterable<Object>> toIterable = list -> (Iterable<Object>) list;
+            return invoke(ReactorMethods.MONO_FLAT_MAP_ITERABLE, mono, toIterable);
+        }
+    },
+    ;
+
+    private static final String MONO_CLASS_NAME = "reactor.core.publisher.Mono";
+    private static final String FLUX_CLASS_NAME = "reactor.core.publisher.Flux";
+
+    private final String code;
+    private final String desc;
+
+    AsyncReturnTypeEnum(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+
+    /**
+     * 方法返回的异步对象转为CompletableFuture
+     *
+     * @param returned
+     * @return
+     */
+    public abstract CompletableFuture<Object> toFuture(Object returned);
+
+    /**
+     * CompletableFuture转回方法声明的返回类型
+     *
+     * @param future
+     * @return
+     */
+    public abstract Object fromFuture(CompletableFuture<Object> future);
+
+    /**
+     * 是否为异步返回值
+     *
+     * @return
+     */
+    public boolean isAsync() {
+        return this != NONE;
+    }
+
+    /**
+     * 根据方法返回值类型判断
+     *
+     * @param returnType
+     * @return
+     */
+    public static AsyncReturnTypeEnum of(Class<?> returnType) {
+        if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+            return COMPLETABLE_FUTURE;
+        }
+        if (MONO_CLASS_NAME.equals(returnType.getName())) {
+            return MONO;
+        }
+        if (FLUX_CLASS_NAME.equals(returnType.getName())) {
+            return FLUX;
+        }
+        return NONE;
+    }
+
+    /**
+     * 反射调用，解包异常
+     *
+     * @param method
+     * @param target
+     * @param args
+     * @return
+     */
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * reactor的方法，首次使用Mono、Flux时才加载
+     */
+    private static class ReactorMethods {
+        private static final Method MONO_TO_FUTURE;
+        private static final Method MONO_FROM_FUTURE;
+        private static final Method MONO_FLAT_MAP_ITERABLE;
+        private static final Method FLUX_COLLECT_LIST;
+
+        static {
+            try {
+                ClassLoader classLoader = AsyncReturnTypeEnum.class.getClassLoader();
+                Class<?> monoClass = Class.forName(MONO_CLASS_NAME, false, classLoader);
+                Class<?> fluxClass = Class.forName(FLUX_CLASS_NAME, false, classLoader);
+                MONO_TO_FUTURE = monoClass.getMethod("toFuture");
+                MONO_FROM_FUTURE = monoClass.getMethod("fromFuture", CompletableFuture.class);
+                MONO_FLAT_MAP_ITERABLE = monoClass.getMethod("flatMapIterable", Function.class);
+                FLUX_COLLECT_LIST = fluxClass.getMethod("collectList");
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("本地缓存 reactor适配初始化失败", e);
+            }
+        }
+    }
+}
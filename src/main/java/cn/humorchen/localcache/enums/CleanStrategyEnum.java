@@ -21,6 +21,18 @@ public enum CleanStrategyEnum {
      * 随机淘汰
      */
     RANDOM("RANDOM", "随机淘汰"),
+    /**
+     * 近似LRU：每次抽样少量值放入淘汰候选池，淘汰池中空闲最久的，耗时与缓存大小无关
+     */
+    SAMPLED_LRU("SAMPLED_LRU", "抽样淘汰最久没使用的数据"),
+    /**
+     * 近似LFU：每次抽样少量值放入淘汰候选池，淘汰池中访问次数最少的（访问次数随空闲时间衰减）
+     */
+    SAMPLED_LFU("SAMPLED_LFU", "抽样淘汰访问次数最少的数据"),
+    /**
+     * 成本感知（GreedyDual-Size-Frequency）：抽样淘汰 访问次数×加载耗时/内存占用 最小的，优先保留加载慢、常用、占内存小的值
+     */
+    COST_AWARE("COST_AWARE", "抽样淘汰每字节节省加载耗时最少的数据"),
 
     NULL("NULL", "未选择"),
     ;
@@ -47,4 +59,18 @@ public enum CleanStrategyEnum {
         }
         return null;
     }
+
+    /**
+     * 缓存实际使用的清理策略：注解配置了的用注解的，否则用全局配置的
+     *
+     * @param annotationStrategy
+     * @param globalStrategyCode
+     * @return 都未配置时为空
+     */
+    public static CleanStrategyEnum resolve(CleanStrategyEnum annotationStrategy, String globalStrategyCode) {
+        if (annotationStrategy != null && annotationStrategy != NULL) {
+            return annotationStrategy;
+        }
+        return of(globalStrategyCode);
+    }
 }
@@ -0,0 +1,45 @@
+package cn.humorchen.localcache.enums;
+
+import lombok.Getter;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/23
+ * description: 刷新线程池的线程类型
+ * @see cn.humorchen.localcache.LocalCacheExecutors
+ **/
+@Getter
+public enum ExecutorTypeEnum {
+    /**
+     * 平台线程池，按 threadPool* 配置创建
+     */
+    PLATFORM("platform", "平台线程池"),
+    /**
+     * 虚拟线程，每个任务一个虚拟线程，并发由每个缓存的舱壁限制；需JDK21及以上，不支持时退回平台线程池
+     */
+    VIRTUAL("virtual", "虚拟线程"),
+    ;
+
+    ExecutorTypeEnum(String code, String title) {
+        this.code = code;
+        this.title = title;
+    }
+
+    private final String code;
+    private final String title;
+
+    /**
+     * of
+     *
+     * @param code
+     * @return
+     */
+    public static ExecutorTypeEnum of(String code) {
+        for (ExecutorTypeEnum value : values()) {
+            if (value.code.equals(code)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
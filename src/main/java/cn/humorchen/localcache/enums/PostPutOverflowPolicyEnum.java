@@ -0,0 +1,45 @@
+package cn.humorchen.localcache.enums;
+
+import lombok.Getter;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/14
+ * description: 写入后处理队列满时的处理策略
+ * @see cn.humorchen.localcache.LocalCachePostPutPipeline
+ **/
+@Getter
+public enum PostPutOverflowPolicyEnum {
+    /**
+     * 在业务线程同步处理
+     */
+    CALLER_RUNS("CALLER_RUNS", "业务线程同步处理"),
+    /**
+     * 丢弃并计数，内存统计的偏差由定时重算修正，本次不执行写入触发器
+     */
+    DISCARD("DISCARD", "丢弃"),
+    ;
+
+    PostPutOverflowPolicyEnum(String code, String title) {
+        this.code = code;
+        this.title = title;
+    }
+
+    private final String code;
+    private final String title;
+
+    /**
+     * of
+     *
+     * @param code
+     * @return
+     */
+    public static PostPutOverflowPolicyEnum of(String code) {
+        for (PostPutOverflowPolicyEnum value : values()) {
+            if (value.code.equals(code)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
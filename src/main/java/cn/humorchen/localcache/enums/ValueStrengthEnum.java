@@ -0,0 +1,48 @@
+package cn.humorchen.localcache.enums;
+
+import lombok.Getter;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/21
+ * description: 缓存值的引用强度
+ **/
+@Getter
+public enum ValueStrengthEnum {
+    /**
+     * 强引用，不会被gc回收，没有引用对象和引用队列的开销，适合小而热的缓存
+     */
+    STRONG("STRONG", "强引用"),
+    /**
+     * 软引用，内存不足时才被gc回收
+     */
+    SOFT("SOFT", "软引用"),
+    /**
+     * 弱引用，没有其他强引用时下次gc即被回收
+     */
+    WEAK("WEAK", "弱引用"),
+    ;
+
+    ValueStrengthEnum(String code, String title) {
+        this.code = code;
+        this.title = title;
+    }
+
+    private final String code;
+    private final String title;
+
+    /**
+     * of
+     *
+     * @param code
+     * @return
+     */
+    public static ValueStrengthEnum of(String code) {
+        for (ValueStrengthEnum value : values()) {
+            if (value.code.equals(code)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -4,6 +4,9 @@ package cn.humorchen.localcache.interfaces;
  * @author  humorchen
  * date: 2023/12/28
  * description: 缓存的参数对象对比接口
+ * 方法参数实现该接口后，是否为相同key由该接口判定，key指纹里只使用参数的类型和hashCode
+ * 因此覆写判定时必须同时覆写hashCode并与之保持一致（判定相同的两个对象hashCode必须相同）
+ * 只对方法参数本身生效，嵌套在集合、Map、对象字段里的实现类按内容判定
  **/
 public interface ILocalCacheEquals {
     /**
@@ -0,0 +1,22 @@
+package cn.humorchen.localcache.interfaces;
+
+import cn.humorchen.localcache.Murmur3Hasher;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/4
+ * description: 方法缓存key的参数编码器
+ * 把方法参数编码进128位哈希器得到参数指纹，指纹相同视为参数相同
+ * 可通过全局配置 local.cache.key-encoder 替换为自己的实现
+ **/
+public interface ILocalCacheKeyEncoder {
+    /**
+     * 将方法参数编码写入哈希器
+     * 同步调用，每次方法调用（包括命中缓存）都会执行，请避免构建中间字符串等重操作
+     *
+     * @param args   方法参数
+     * @param hasher 哈希器
+     * @return 参数的估算长度（约等于参数的json字符串长度），用于key长度限制和内存统计
+     */
+    int encode(Object[] args, Murmur3Hasher hasher);
+}
@@ -0,0 +1,20 @@
+package cn.humorchen.localcache.interfaces;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/7
+ * description: 被缓存方法的调用器
+ * 每个方法在解析缓存执行计划时生成一次，缓存未命中和自动刷新时用它执行被代理方法
+ **/
+public interface ILocalCacheMethodInvoker {
+    /**
+     * 执行被代理方法
+     * 方法抛出的异常（包括受检异常）原样抛出，不做包装
+     *
+     * @param target 被代理对象
+     * @param args   方法参数
+     * @return 方法返回值
+     * @throws Throwable 被代理方法抛出的异常
+     */
+    Object invoke(Object target, Object[] args) throws Throwable;
+}
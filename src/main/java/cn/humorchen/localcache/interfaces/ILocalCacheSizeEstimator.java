@@ -0,0 +1,19 @@
+package cn.humorchen.localcache.interfaces;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/13
+ * description: 缓存值的内存占用估算器
+ * 每次写入缓存时调用一次，结果用于内存统计、内存限制和按大小清理
+ * 可通过全局配置 local.cache.size-estimator 替换为自己的实现
+ **/
+public interface ILocalCacheSizeEstimator {
+    /**
+     * 估算对象（包括其引用的对象）占用的堆内存
+     * 同步调用，请避免序列化等重操作
+     *
+     * @param object 方法返回值，不为null
+     * @return 字节数
+     */
+    long estimate(Object object);
+}
@@ -3,16 +3,15 @@ package cn.humorchen.localcache.interfaces.Impl;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.humorchen.localcache.LocalCache;
-import cn.humorchen.localcache.LocalCacheContext;
+import cn.humorchen.localcache.LocalCacheExecutors;
+import cn.humorchen.localcache.LocalCacheMemoryArbiter;
+import cn.humorchen.localcache.LocalCacheMemoryPressureMonitor;
 import cn.humorchen.localcache.LocalCacheSizeUtil;
 import cn.humorchen.localcache.SignalSpeedLimitUtil;
 import cn.humorchen.localcache.aspect.LocalCacheAspect;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
-import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
-import cn.humorchen.localcache.cleaner.LocalCacheCleanerFactory;
 import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
-import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import cn.humorchen.localcache.interfaces.ILocalCachePutValueTrigger;
 import cn.humorchen.localcache.job.LocalCacheCleanerJob;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -36,6 +35,10 @@ public class CleanCacheMemoryTrigger implements ILocalCachePutValueTrigger {
     private LocalCacheCleanerJob localCacheCleanerJob;
     @Autowired
     private LocalCacheGlobalConfig config;
+    @Autowired
+    private LocalCacheMemoryArbiter localCacheMemoryArbiter;
+    @Autowired
+    private LocalCacheMemoryPressureMonitor localCacheMemoryPressureMonitor;
 
 
     /**
@@ -58,14 +61,14 @@ public class CleanCacheMemoryTrigger implements ILocalCachePutValueTrigger {
         // 方法维度
         if (localCache != null && StrUtil.isNotBlank(localCache.usedMemoryMaxSize()) && StrUtil.isNotBlank(methodCacheKey)) {
             long usedMemoryMaxSize = localCacheSizeUtil.parseSizeStr(localCache.usedMemoryMaxSize());
-            // 获取大小带缓存
+            // 增量维护的内存占用，O(1)
             long methodCacheByteSize = localCacheSizeUtil.getMethodCacheByteSize(methodCacheKey);
             long expectCleanSize = methodCacheByteSize - usedMemoryMaxSize;
             if (expectCleanSize > 0) {
-                // 触发异步清理。100ms内只能触发一次
+                // 触发异步清理。100ms内只能触发一次，该缓存正在清理时不再提交
                 SignalSpeedLimitUtil signalSpeedLimitUtil = methodSignalUtilMap.computeIfAbsent(methodCacheKey, (k) -> new SignalSpeedLimitUtil(100, 1));
                 if (signalSpeedLimitUtil.tryGetSignal()) {
-                    LocalCacheAspect.getMethodCacheExecutor().execute(() -> localCacheCleanerJob.cleanMethodCacheForMemoryLimit(methodCacheKey));
+                    localCacheCleanerJob.cleanMethodCacheForMemoryLimitAsync(methodCacheKey);
                 }
             }
         }
@@ -81,18 +84,18 @@ public class CleanCacheMemoryTrigger implements ILocalCachePutValueTrigger {
         // 获得信号量，100ms只有1个
         if (globalMethodSignalUtil.tryGetSignal()) {
             long allMethodCacheUsedMemoryMaxSize = config.getAllMethodCacheUsedMemoryMaxSizeByte() != null && config.getAllMethodCacheUsedMemoryMaxSizeByte() > 0 ? config.getAllMethodCacheUsedMemoryMaxSizeByte() : 0;
+            // 堆内存压力下的临时上限
+            allMethodCacheUsedMemoryMaxSize = localCacheMemoryPressureMonitor.effectiveGlobalLimit(allMethodCacheUsedMemoryMaxSize);
             if (allMethodCacheUsedMemoryMaxSize > 0) {
                 Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = LocalCacheAspect.cacheMap;
                 if (MapUtil.isNotEmpty(cacheMap)) {
-                    // 获取大小带缓存
-                    long cacheMapByteSize = cacheMap.values().stream().mapToLong(cache -> localCacheSizeUtil.getMethodCacheByteSize(LocalCacheContext.getCacheName(cache))).sum();
+                    // 增量维护的内存占用，O(1)
+                    long cacheMapByteSize = LocalCacheSizeUtil.getAllMethodCacheByteSize();
                     long expectCleanSize = cacheMapByteSize - allMethodCacheUsedMemoryMaxSize;
                     // 需要清理
                     if (expectCleanSize > 0) {
-                        CleanStrategyEnum cleanStrategy = CleanStrategyEnum.of(config.getCleanStrategy());
-                        ILocalCacheCleaner cleaner = LocalCacheCleanerFactory.getCleaner(cleanStrategy);
-                        // 异步清理
-                        LocalCacheAspect.getMethodCacheExecutor().execute(() -> cleaner.clean(cacheMap, cacheMapByteSize, expectCleanSize));
+                        // 异步按公平份额、优先级回收
+                        LocalCacheExecutors.cleanup().execute(() -> localCacheMemoryArbiter.reclaim(expectCleanSize));
                     }
                 }
             }
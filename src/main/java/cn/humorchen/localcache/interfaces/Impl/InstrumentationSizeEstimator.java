@@ -0,0 +1,31 @@
+package cn.humorchen.localcache.interfaces.Impl;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/13
+ * description: 基于java agent的缓存值内存占用估算器
+ * 对象图遍历同ReflectiveSizeEstimator，单个对象的大小由Instrumentation.getObjectSize给出，是jvm的精确值
+ * 启动参数加上 -javaagent:LocalCache.jar 后默认启用
+ *
+ * @see cn.humorchen.localcache.LocalCacheSizeAgent
+ **/
+public class InstrumentationSizeEstimator extends ReflectiveSizeEstimator {
+    private final Instrumentation instrumentation;
+
+    public InstrumentationSizeEstimator(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * 对象本身（不含引用的对象）占用的内存
+     *
+     * @param object
+     * @return
+     */
+    @Override
+    protected long shallowSize(Object object) {
+        return instrumentation.getObjectSize(object);
+    }
+}
@@ -0,0 +1,20 @@
+package cn.humorchen.localcache.interfaces.Impl;
+
+import cn.humorchen.localcache.interfaces.ILocalCacheSizeEstimator;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/13
+ * description: 按json字符串长度估算缓存值内存占用（json长度 * 2 字节）
+ * 旧版本的计算方式，每次写入都要序列化一次，且与实际占用可能相差数倍，仅用于兼容
+ **/
+public class JsonLengthSizeEstimator implements ILocalCacheSizeEstimator {
+    public static final JsonLengthSizeEstimator INSTANCE = new JsonLengthSizeEstimator();
+
+    @Override
+    public long estimate(Object object) {
+        // java 1字符等于2字节
+        return JSONObject.toJSONString(object).length() * 2L;
+    }
+}
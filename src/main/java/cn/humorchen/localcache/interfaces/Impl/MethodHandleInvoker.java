@@ -0,0 +1,92 @@
+package cn.humorchen.localcache.interfaces.Impl;
+
+import cn.humorchen.localcache.interfaces.ILocalCacheMethodInvoker;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/7
+ * description: 基于MethodHandle的方法调用器
+ * 方法句柄在创建时适配为 (Object target, Object[] args) -> Object 的固定签名，调用走invokeExact，
+ * 不需要每次做参数检查和InvocationTargetException包装，JIT可以内联
+ * 无法生成方法句柄时退化为反射调用
+ **/
+@Slf4j
+public class MethodHandleInvoker implements ILocalCacheMethodInvoker {
+    /**
+     * 统一后的方法签名
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    /**
+     * 适配后的方法句柄
+     */
+    private final MethodHandle handle;
+
+    private MethodHandleInvoker(MethodHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 创建方法调用器
+     *
+     * @param method
+     * @return
+     */
+    public static ILocalCacheMethodInvoker create(Method method) {
+        try {
+            if (!method.isAccessible()) {
+                method.setAccessible(true);
+            }
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                // 静态方法忽略target参数
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            handle = handle.asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+            return new MethodHandleInvoker(handle);
+        } catch (Exception e) {
+            log.warn("本地缓存：方法 {} 生成方法句柄失败，使用反射调用", method, e);
+            return new ReflectInvoker(method);
+        }
+    }
+
+    /**
+     * 执行被代理方法
+     *
+     * @param target 被代理对象
+     * @param args   方法参数
+     * @return 方法返回值
+     * @throws Throwable 被代理方法抛出的异常
+     */
+    @Override
+    public Object invoke(Object target, Object[] args) throws Throwable {
+        return handle.invokeExact(target, args);
+    }
+
+    /**
+     * 反射调用器，解包InvocationTargetException
+     */
+    private static class ReflectInvoker implements ILocalCacheMethodInvoker {
+        private final Method method;
+
+        private ReflectInvoker(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() != null ? e.getCause() : e;
+            }
+        }
+    }
+}
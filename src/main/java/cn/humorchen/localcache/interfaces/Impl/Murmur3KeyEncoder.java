@@ -0,0 +1,508 @@
+package cn.humorchen.localcache.interfaces.Impl;
+
+import cn.humorchen.localcache.Murmur3Hasher;
+import cn.humorchen.localcache.interfaces.ILocalCacheEquals;
+import cn.humorchen.localcache.interfaces.ILocalCacheKeyEncoder;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/4
+ * description: 默认的方法缓存key参数编码器
+ * 基础类型、包装类型、字符串、枚举、集合、数组直接流式写入Murmur3哈希，不构建中间字符串
+ * 普通对象按字段反射遍历（字段列表按类缓存），无法反射访问的对象或嵌套过深的对象退化为json序列化
+ * 遍历时记录当前路径上的对象（按引用），引用回路径上的对象时只写入回指的层数，不再往下遍历
+ * 实现了ILocalCacheEquals的方法参数只写入类型和hashCode，由key的equals调用接口判定；嵌套的按内容编码
+ **/
+@Slf4j
+public class Murmur3KeyEncoder implements ILocalCacheKeyEncoder {
+    public static final Murmur3KeyEncoder INSTANCE = new Murmur3KeyEncoder();
+    /**
+     * 最大遍历深度，超过后退化为json序列化（fastjson可处理循环引用）
+     */
+    private static final int MAX_DEPTH = 16;
+    /**
+     * 无法反射访问字段的类的标记
+     */
+    private static final Field[] UNSUPPORTED = new Field[0];
+    /**
+     * 类的字段缓存
+     */
+    private static final Map<Class<?>, Field[]> FIELD_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 类型标记，避免不同类型的值编码后相同
+     */
+    private static final int TAG_NULL = 0;
+    private static final int TAG_BOOLEAN = 1;
+    private static final int TAG_BYTE = 2;
+    private static final int TAG_SHORT = 3;
+    private static final int TAG_CHAR = 4;
+    private static final int TAG_INT = 5;
+    private static final int TAG_LONG = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_DOUBLE = 8;
+    private static final int TAG_STRING = 9;
+    private static final int TAG_ENUM = 10;
+    private static final int TAG_ORDERED_COLLECTION = 11;
+    private static final int TAG_SET = 12;
+    private static final int TAG_MAP = 13;
+    private static final int TAG_ARRAY = 14;
+    private static final int TAG_OBJECT = 15;
+    private static final int TAG_JSON = 16;
+    private static final int TAG_CUSTOM_EQUALS = 17;
+    private static final int TAG_DATE = 18;
+    private static final int TAG_BIG_NUMBER = 19;
+    private static final int TAG_CLASS = 20;
+    private static final int TAG_OPTIONAL = 21;
+    private static final int TAG_CYCLE = 22;
+
+    /**
+     * 将方法参数编码写入哈希器
+     *
+     * @param args   方法参数
+     * @param hasher 哈希器
+     * @return 参数的估算长度
+     */
+    @Override
+    public int encode(Object[] args, Murmur3Hasher hasher) {
+        if (args == null) {
+            return 0;
+        }
+        hasher.putInt(args.length);
+        int length = 0;
+        for (Object arg : args) {
+            length += encodeValue(arg, hasher, 0, null);
+        }
+        return length;
+    }
+
+    /**
+     * 编码单个值
+     *
+     * @param value
+     * @param hasher
+     * @param depth
+     * @return 估算长度
+     */
+    protected int encodeValue(Object value, Murmur3Hasher hasher, int depth) {
+        return encodeValue(value, hasher, depth, null);
+    }
+
+    /**
+     * 编码单个值
+     *
+     * @param value
+     * @param hasher
+     * @param depth
+     * @param path   当前路径上的对象及其层数，遇到第一个复合对象时才创建
+     * @return 估算长度
+     */
+    private int encodeValue(Object value, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        if (value == null) {
+            hasher.putByte(TAG_NULL);
+            return 4;
+        }
+        if (value instanceof String) {
+            String str = (String) value;
+            hasher.putByte(TAG_STRING).putChars(str);
+            return str.length() + 2;
+        }
+        if (value instanceof Integer) {
+            int i = (Integer) value;
+            hasher.putByte(TAG_INT).putInt(i);
+            return stringSize(i);
+        }
+        if (value instanceof Long) {
+            long l = (Long) value;
+            hasher.putByte(TAG_LONG).putLong(l);
+            return stringSize(l);
+        }
+        if (value instanceof Boolean) {
+            boolean b = (Boolean) value;
+            hasher.putByte(TAG_BOOLEAN).putBoolean(b);
+            return b ? 4 : 5;
+        }
+        if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            hasher.putByte(TAG_ENUM).putInt(e.getDeclaringClass().getName().hashCode()).putInt(e.ordinal());
+            return e.name().length() + 2;
+        }
+        if (value instanceof Short) {
+            short s = (Short) value;
+            hasher.putByte(TAG_SHORT).putShort(s);
+            return stringSize(s);
+        }
+        if (value instanceof Byte) {
+            byte b = (Byte) value;
+            hasher.putByte(TAG_BYTE).putByte(b);
+            return stringSize(b);
+        }
+        if (value instanceof Character) {
+            hasher.putByte(TAG_CHAR).putChar((Character) value);
+            return 3;
+        }
+        if (value instanceof Double) {
+            hasher.putByte(TAG_DOUBLE).putDouble((Double) value);
+            return 10;
+        }
+        if (value instanceof Float) {
+            hasher.putByte(TAG_FLOAT).putFloat((Float) value);
+            return 8;
+        }
+        if (depth == 0 && value instanceof ILocalCacheEquals) {
+            // 方法参数本身由ILocalCacheEquals判定是否相同，指纹里只写类型和hashCode（需与接口判定一致）
+            // 嵌套在集合、对象里的不会被接口判定，按内容编码
+            hasher.putByte(TAG_CUSTOM_EQUALS).putInt(value.getClass().getName().hashCode()).putInt(value.hashCode());
+            return 16;
+        }
+        Integer ancestorDepth = path != null ? path.get(value) : null;
+        if (ancestorDepth != null) {
+            // 循环引用
+            hasher.putByte(TAG_CYCLE).putInt(depth - ancestorDepth);
+            return 8;
+        }
+        if (depth >= MAX_DEPTH) {
+            return encodeJson(value, hasher);
+        }
+        if (value instanceof CharSequence) {
+            CharSequence chars = (CharSequence) value;
+            hasher.putByte(TAG_STRING).putChars(chars);
+            return chars.length() + 2;
+        }
+        if (value instanceof Date) {
+            long time = ((Date) value).getTime();
+            hasher.putByte(TAG_DATE).putLong(time);
+            return stringSize(time);
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            String str = value.toString();
+            hasher.putByte(TAG_BIG_NUMBER).putChars(str);
+            return str.length();
+        }
+        if (value instanceof Class) {
+            String name = ((Class<?>) value).getName();
+            hasher.putByte(TAG_CLASS).putChars(name);
+            return name.length() + 2;
+        }
+        if (path == null) {
+            path = new IdentityHashMap<>();
+        }
+        path.put(value, depth);
+        try {
+            return encodeComposite(value, hasher, depth, path);
+        } finally {
+            path.remove(value);
+        }
+    }
+
+    /**
+     * 编码可能包含其他对象的值
+     *
+     * @param value
+     * @param hasher
+     * @param depth
+     * @param path
+     * @return 估算长度
+     */
+    private int encodeComposite(Object value, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        if (value instanceof Set) {
+            return encodeUnordered((Set<?>) value, hasher, depth, path);
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hasher.putByte(TAG_ORDERED_COLLECTION).putInt(collection.size());
+            int length = 2;
+            for (Object element : collection) {
+                length += encodeValue(element, hasher, depth + 1, path) + 1;
+            }
+            return length;
+        }
+        if (value instanceof Map) {
+            return encodeMap((Map<?, ?>) value, hasher, depth, path);
+        }
+        if (value.getClass().isArray()) {
+            return encodeArray(value, hasher, depth, path);
+        }
+        if (value instanceof Optional) {
+            Optional<?> optional = (Optional<?>) value;
+            hasher.putByte(TAG_OPTIONAL);
+            return encodeValue(optional.orElse(null), hasher, depth + 1, path);
+        }
+        return encodeObject(value, hasher, depth, path);
+    }
+
+    /**
+     * 无序集合：每个元素单独哈希后求和，与迭代顺序无关
+     *
+     * @param set
+     * @param hasher
+     * @param depth
+     * @param path
+     * @return
+     */
+    private int encodeUnordered(Set<?> set, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        Murmur3Hasher child = new Murmur3Hasher();
+        long sumHigh = 0;
+        long sumLow = 0;
+        int length = 2;
+        for (Object element : set) {
+            length += encodeValue(element, child.reset(), depth + 1, path) + 1;
+            child.finish();
+            sumHigh += child.getHigh();
+            sumLow += child.getLow();
+        }
+        hasher.putByte(TAG_SET).putInt(set.size()).putLong(sumHigh).putLong(sumLow);
+        return length;
+    }
+
+    /**
+     * map：每个键值对单独哈希后求和，与迭代顺序无关
+     *
+     * @param map
+     * @param hasher
+     * @param depth
+     * @param path
+     * @return
+     */
+    private int encodeMap(Map<?, ?> map, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        Murmur3Hasher child = new Murmur3Hasher();
+        long sumHigh = 0;
+        long sumLow = 0;
+        int length = 2;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            child.reset();
+            length += encodeValue(entry.getKey(), child, depth + 1, path);
+            length += encodeValue(entry.getValue(), child, depth + 1, path) + 2;
+            child.finish();
+            sumHigh += child.getHigh();
+            sumLow += child.getLow();
+        }
+        hasher.putByte(TAG_MAP).putInt(map.size()).putLong(sumHigh).putLong(sumLow);
+        return length;
+    }
+
+    /**
+     * 数组，基础类型数组不装箱
+     *
+     * @param array
+     * @param hasher
+     * @param depth
+     * @param path
+     * @return
+     */
+    private int encodeArray(Object array, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        hasher.putByte(TAG_ARRAY);
+        int length = 2;
+        if (array instanceof byte[]) {
+            byte[] bytes = (byte[]) array;
+            hasher.putByte(TAG_BYTE).putInt(bytes.length);
+            for (byte b : bytes) {
+                hasher.putByte(b);
+            }
+            // fastjson把byte数组序列化为base64
+            return length + bytes.length * 4 / 3;
+        }
+        if (array instanceof int[]) {
+            int[] ints = (int[]) array;
+            hasher.putByte(TAG_INT).putInt(ints.length);
+            for (int i : ints) {
+                hasher.putInt(i);
+                length += stringSize(i) + 1;
+            }
+            return length;
+        }
+        if (array instanceof long[]) {
+            long[] longs = (long[]) array;
+            hasher.putByte(TAG_LONG).putInt(longs.length);
+            for (long l : longs) {
+                hasher.putLong(l);
+                length += stringSize(l) + 1;
+            }
+            return length;
+        }
+        if (array instanceof char[]) {
+            char[] chars = (char[]) array;
+            hasher.putByte(TAG_CHAR).putInt(chars.length);
+            for (char c : chars) {
+                hasher.putChar(c);
+            }
+            return length + chars.length;
+        }
+        if (array instanceof boolean[]) {
+            boolean[] booleans = (boolean[]) array;
+            hasher.putByte(TAG_BOOLEAN).putInt(booleans.length);
+            for (boolean b : booleans) {
+                hasher.putBoolean(b);
+            }
+            return length + booleans.length * 6;
+        }
+        if (array instanceof short[]) {
+            short[] shorts = (short[]) array;
+            hasher.putByte(TAG_SHORT).putInt(shorts.length);
+            for (short s : shorts) {
+                hasher.putShort(s);
+                length += stringSize(s) + 1;
+            }
+            return length;
+        }
+        if (array instanceof double[]) {
+            double[] doubles = (double[]) array;
+            hasher.putByte(TAG_DOUBLE).putInt(doubles.length);
+            for (double d : doubles) {
+                hasher.putDouble(d);
+            }
+            return length + doubles.length * 11;
+        }
+        if (array instanceof float[]) {
+            float[] floats = (float[]) array;
+            hasher.putByte(TAG_FLOAT).putInt(floats.length);
+            for (float f : floats) {
+                hasher.putFloat(f);
+            }
+            return length + floats.length * 9;
+        }
+        Object[] objects = (Object[]) array;
+        hasher.putByte(TAG_OBJECT).putInt(objects.length);
+        for (Object object : objects) {
+            length += encodeValue(object, hasher, depth + 1, path) + 1;
+        }
+        return length;
+    }
+
+    /**
+     * 普通对象按字段遍历
+     *
+     * @param value
+     * @param hasher
+     * @param depth
+     * @param path
+     * @return
+     */
+    private int encodeObject(Object value, Murmur3Hasher hasher, int depth, IdentityHashMap<Object, Integer> path) {
+        Class<?> cls = value.getClass();
+        Field[] fields = FIELD_CACHE.computeIfAbsent(cls, Murmur3KeyEncoder::resolveFields);
+        if (fields == UNSUPPORTED) {
+            return encodeJson(value, hasher);
+        }
+        hasher.putByte(TAG_OBJECT).putInt(cls.getName().hashCode());
+        int length = 2;
+        try {
+            for (Field field : fields) {
+                length += field.getName().length() + 4;
+                Class<?> type = field.getType();
+                if (!type.isPrimitive()) {
+                    length += encodeValue(field.get(value), hasher, depth + 1, path);
+                } else if (type == int.class) {
+                    int i = field.getInt(value);
+                    hasher.putInt(i);
+                    length += stringSize(i);
+                } else if (type == long.class) {
+                    long l = field.getLong(value);
+                    hasher.putLong(l);
+                    length += stringSize(l);
+                } else if (type == boolean.class) {
+                    hasher.putBoolean(field.getBoolean(value));
+                    length += 5;
+                } else if (type == double.class) {
+                    hasher.putDouble(field.getDouble(value));
+                    length += 10;
+                } else if (type == float.class) {
+                    hasher.putFloat(field.getFloat(value));
+                    length += 8;
+                } else if (type == char.class) {
+                    hasher.putChar(field.getChar(value));
+                    length += 3;
+                } else if (type == short.class) {
+                    short s = field.getShort(value);
+                    hasher.putShort(s);
+                    length += stringSize(s);
+                } else {
+                    byte b = field.getByte(value);
+                    hasher.putByte(b);
+                    length += stringSize(b);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            // 理论上不会发生，字段在缓存前已设置可访问
+            log.error("本地缓存key编码反射读取字段失败，class：{}", cls.getName(), e);
+            return encodeJson(value, hasher);
+        }
+        return length;
+    }
+
+    /**
+     * 退化为json序列化
+     *
+     * @param value
+     * @param hasher
+     * @return
+     */
+    private int encodeJson(Object value, Murmur3Hasher hasher) {
+        String json = JSONObject.toJSONString(value);
+        hasher.putByte(TAG_JSON).putChars(json);
+        return json.length();
+    }
+
+    /**
+     * 解析类的实例字段（含父类），jdk自带类和无法反射访问的类返回UNSUPPORTED
+     *
+     * @param cls
+     * @return
+     */
+    private static Field[] resolveFields(Class<?> cls) {
+        String name = cls.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.")) {
+            return UNSUPPORTED;
+        }
+        List<Field> fields = new ArrayList<>();
+        try {
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        } catch (RuntimeException e) {
+            // jdk9+模块化限制等情况
+            log.debug("本地缓存key编码无法反射访问类：{}，退化为json序列化", name);
+            return UNSUPPORTED;
+        }
+        return fields.toArray(new Field[0]);
+    }
+
+    /**
+     * 数字的十进制字符串长度，不生成字符串
+     *
+     * @param x
+     * @return
+     */
+    private static int stringSize(long x) {
+        int size = 1;
+        if (x < 0) {
+            size++;
+            x = x == Long.MIN_VALUE ? Long.MAX_VALUE : -x;
+        }
+        long p = 10;
+        for (int i = 1; i < 19; i++) {
+            if (x < p) {
+                return size;
+            }
+            size++;
+            p = 10 * p;
+        }
+        return size;
+    }
+}
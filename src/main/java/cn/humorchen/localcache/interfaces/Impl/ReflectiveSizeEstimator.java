@@ -0,0 +1,314 @@
+package cn.humorchen.localcache.interfaces.Impl;
+
+import cn.humorchen.localcache.interfaces.ILocalCacheSizeEstimator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.PlatformManagedObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/13
+ * description: 默认的缓存值内存占用估算器
+ * 按对象图遍历估算保留大小：对象头、字段（按类缓存布局）、数组、字符串底层数组，按8字节对齐，区分是否开启压缩指针
+ * 同一个值内被多处引用的对象只计一次，Class、枚举、类加载器、线程等全局共享对象不计入
+ * 无法反射访问字段的类（jdk9+模块内的类）只计对象本身，集合、Map改为遍历元素并按ArrayList、HashMap估算底层结构
+ **/
+@Slf4j
+public class ReflectiveSizeEstimator implements ILocalCacheSizeEstimator {
+    public static final ReflectiveSizeEstimator INSTANCE = new ReflectiveSizeEstimator();
+    /**
+     * 单个值最多遍历的对象数，超过后不再继续遍历
+     */
+    private static final int MAX_VISIT = 100000;
+    /**
+     * 对象对齐字节数
+     */
+    private static final int OBJECT_ALIGNMENT = 8;
+    /**
+     * 是否开启了压缩指针
+     */
+    protected static final boolean COMPRESSED_OOPS = isCompressedOops();
+    /**
+     * 引用大小
+     */
+    protected static final int REFERENCE_SIZE = COMPRESSED_OOPS ? 4 : 8;
+    /**
+     * 对象头大小
+     */
+    protected static final int OBJECT_HEADER_SIZE = COMPRESSED_OOPS ? 12 : 16;
+    /**
+     * 数组头大小（对象头加长度）
+     */
+    protected static final int ARRAY_HEADER_SIZE = COMPRESSED_OOPS ? 16 : 20;
+    /**
+     * 字符串是否使用紧凑存储（jdk9+，latin1字符串每个字符1字节）
+     */
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "1.8").startsWith("1.");
+    /**
+     * 类的字段布局缓存
+     */
+    private static final Map<Class<?>, ClassLayout> LAYOUT_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 估算对象图占用的堆内存
+     *
+     * @param object
+     * @return
+     */
+    @Override
+    public long estimate(Object object) {
+        if (object == null) {
+            return 0;
+        }
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        Deque<Object> pending = new ArrayDeque<>();
+        push(object, visited, pending);
+        long size = 0;
+        int visit = 0;
+        while (!pending.isEmpty() && visit++ < MAX_VISIT) {
+            size += sizeOf(pending.pop(), visited, pending);
+        }
+        return size;
+    }
+
+    /**
+     * 对象本身（不含引用的对象）占用的内存
+     *
+     * @param object
+     * @return
+     */
+    protected long shallowSize(Object object) {
+        Class<?> clazz = object.getClass();
+        if (clazz.isArray()) {
+            Class<?> componentType = clazz.getComponentType();
+            return arraySize(Array.getLength(object), componentType.isPrimitive() ? primitiveSize(componentType) : REFERENCE_SIZE);
+        }
+        return getLayout(clazz).shallowSize;
+    }
+
+    /**
+     * 计算单个对象，并把它引用的对象加入待遍历
+     *
+     * @param object
+     * @param visited
+     * @param pending
+     * @return
+     */
+    private long sizeOf(Object object, Map<Object, Boolean> visited, Deque<Object> pending) {
+        long size = shallowSize(object);
+        Class<?> clazz = object.getClass();
+        if (clazz.isArray()) {
+            if (!clazz.getComponentType().isPrimitive()) {
+                for (Object element : (Object[]) object) {
+                    push(element, visited, pending);
+                }
+            }
+            return size;
+        }
+        if (object instanceof String) {
+            return size + stringValueSize((String) object);
+        }
+        ClassLayout layout = getLayout(clazz);
+        if (layout.opaque) {
+            if (object instanceof Collection) {
+                Collection<?> collection = (Collection<?>) object;
+                // 按ArrayList估算底层数组
+                size += arraySize(collection.size(), REFERENCE_SIZE);
+                for (Object element : collection) {
+                    push(element, visited, pending);
+                }
+            } else if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) object;
+                // 按HashMap估算底层数组和每个条目Node（hash、key、value、next）
+                size += arraySize(map.size() * 4 / 3 + 1, REFERENCE_SIZE) + map.size() * align(OBJECT_HEADER_SIZE + 4L + 3L * REFERENCE_SIZE);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    push(entry.getKey(), visited, pending);
+                    push(entry.getValue(), visited, pending);
+                }
+            }
+            return size;
+        }
+        for (Field field : layout.referenceFields) {
+            try {
+                push(field.get(object), visited, pending);
+            } catch (IllegalAccessException e) {
+                log.debug("本地缓存 估算内存占用读取字段失败 {}", field, e);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 加入待遍历，已遍历过的和全局共享的对象不重复计入
+     *
+     * @param object
+     * @param visited
+     * @param pending
+     */
+    private void push(Object object, Map<Object, Boolean> visited, Deque<Object> pending) {
+        if (object == null || isShared(object) || visited.put(object, Boolean.TRUE) != null) {
+            return;
+        }
+        pending.push(object);
+    }
+
+    /**
+     * 是否为全局共享的对象
+     *
+     * @param object
+     * @return
+     */
+    private static boolean isShared(Object object) {
+        return object instanceof Class || object instanceof Enum || object instanceof ClassLoader || object instanceof Thread;
+    }
+
+    /**
+     * 字符串底层数组占用的内存
+     *
+     * @param str
+     * @return
+     */
+    private static long stringValueSize(String str) {
+        int length = str.length();
+        int charSize = 2;
+        if (COMPACT_STRINGS) {
+            charSize = 1;
+            for (int i = 0; i < length; i++) {
+                if (str.charAt(i) > 0xFF) {
+                    charSize = 2;
+                    break;
+                }
+            }
+        }
+        return arraySize(length, charSize);
+    }
+
+    /**
+     * 获取类的字段布局
+     *
+     * @param clazz
+     * @return
+     */
+    private static ClassLayout getLayout(Class<?> clazz) {
+        ClassLayout layout = LAYOUT_CACHE.get(clazz);
+        if (layout == null) {
+            layout = LAYOUT_CACHE.computeIfAbsent(clazz, ClassLayout::new);
+        }
+        return layout;
+    }
+
+    /**
+     * 数组占用的内存
+     *
+     * @param length
+     * @param elementSize
+     * @return
+     */
+    protected static long arraySize(int length, int elementSize) {
+        return align(ARRAY_HEADER_SIZE + (long) length * elementSize);
+    }
+
+    /**
+     * 按8字节对齐
+     *
+     * @param size
+     * @return
+     */
+    protected static long align(long size) {
+        return (size + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+    }
+
+    /**
+     * 基础类型大小
+     *
+     * @param type
+     * @return
+     */
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * 是否开启了压缩指针
+     * 优先读取hotspot的UseCompressedOops参数，读取不到时按64位jvm且最大堆小于32GB判断
+     *
+     * @return
+     */
+    private static boolean isCompressedOops() {
+        try {
+            Class<?> beanClass = Class.forName("com.sun.management.HotSpotDiagnosticMXBean");
+            Object bean = ManagementFactory.getPlatformMXBean(beanClass.asSubclass(PlatformManagedObject.class));
+            Method getVMOption = beanClass.getMethod("getVMOption", String.class);
+            Object option = getVMOption.invoke(bean, "UseCompressedOops");
+            return Boolean.parseBoolean(String.valueOf(option.getClass().getMethod("getValue").invoke(option)));
+        } catch (Throwable e) {
+            String dataModel = System.getProperty("sun.arch.data.model", "64");
+            return !"64".equals(dataModel) || Runtime.getRuntime().maxMemory() < 32L * 1024 * 1024 * 1024;
+        }
+    }
+
+    /**
+     * 类的字段布局
+     */
+    private static class ClassLayout {
+        /**
+         * 对象本身占用的内存
+         */
+        private final long shallowSize;
+        /**
+         * 引用类型的字段
+         */
+        private final Field[] referenceFields;
+        /**
+         * 字段是否无法反射访问
+         */
+        private final boolean opaque;
+
+        ClassLayout(Class<?> clazz) {
+            long size = OBJECT_HEADER_SIZE;
+            List<Field> fields = new ArrayList<>();
+            boolean accessible = true;
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> type = field.getType();
+                    if (type.isPrimitive()) {
+                        size += primitiveSize(type);
+                        continue;
+                    }
+                    size += REFERENCE_SIZE;
+                    if (accessible) {
+                        try {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        } catch (RuntimeException e) {
+                            // jdk9+ 模块未开放
+                            accessible = false;
+                        }
+                    }
+                }
+            }
+            this.shallowSize = align(size);
+            this.opaque = !accessible;
+            this.referenceFields = accessible ? fields.toArray(new Field[0]) : new Field[0];
+        }
+    }
+}
@@ -2,33 +2,35 @@ package cn.humorchen.localcache.job;
 
 import cn.hutool.core.date.StopWatch;
 import cn.hutool.core.io.unit.DataSizeUtil;
-import cn.hutool.core.map.MapUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.humorchen.localcache.*;
 import cn.humorchen.localcache.aspect.LocalCacheAspect;
 import cn.humorchen.localcache.bean.LocalCacheKey;
 import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.bean.MethodCachePlan;
 import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
 import cn.humorchen.localcache.cleaner.LocalCacheCleanerFactory;
 import cn.humorchen.localcache.config.LocalCacheGlobalConfig;
 import cn.humorchen.localcache.enums.CleanStrategyEnum;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
 import lombok.extern.slf4j.Slf4j;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
-import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * @author  humorchen
  * date: 2023/12/28
  * description: 本地缓存清理器
+ * 每个缓存的内存清理是独立的任务，用缓存自己的清理标记保证同一个缓存同时只有一个清理，不同缓存在共用的清理线程池（有界的ForkJoin线程池）里并行清理
+ * 只有全局内存限制的回收需要跨缓存协调，由仲裁器单独加锁
  **/
 @Component
 @Slf4j
@@ -37,59 +39,42 @@ public class LocalCacheCleanerJob {
     private LocalCacheGlobalConfig config;
     @Autowired
     private LocalCacheSizeUtil localCacheSizeUtil;
-
-    /**
-     * 执行清理的锁
-     */
-    private ReentrantLock cleanLock = new ReentrantLock();
-
-
-    /**
-     * 清理 方法缓存的 LocalCacheValue
-     */
-    @Scheduled(fixedDelay = 60 * 1000)
-    public void cleanMethodCacheLocalCacheValue() {
-        cleanLock.lock();
-        try {
-            int handled = 0;
-            Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = LocalCacheAspect.cacheMap;
-            ReferenceQueue<Object> valueReferenceQueue = LocalCacheAspect.valueReferenceQueue;
-            Reference<?> poll;
-            while ((poll = valueReferenceQueue.poll()) != null) {
-                if (poll instanceof LocalCacheValue) {
-                    LocalCacheValue localCacheValue = (LocalCacheValue) poll;
-                    LocalCacheKey localCacheKey = localCacheValue.getKey();
-                    String methodKey = localCacheKey.getMethodKey();
-                    LocalCache localCache = localCacheKey.getLocalCache();
-                    Cache<LocalCacheKey, LocalCacheValue> cache = cacheMap.get(methodKey);
-                    // 使缓存失效
-                    cache.invalidate(localCacheKey);
-                    handled++;
-                    LocalCacheLogger.info(localCache, "本地缓存：{} 值已被gc回收，缓存值失效", localCacheKey.getMethodKey());
-                }
-            }
-            if (handled > 0) {
-                LocalCacheLogger.debug(null, "本地缓存 清理被GC释放掉的缓存 执行结束,总计处理被GC回收对象 {} 个", handled);
-            }
-        } catch (Exception e) {
-            log.error("清理本地缓存报错(cleanMethodCacheLocalCacheValue)", e);
-        } finally {
-            cleanLock.unlock();
-        }
-    }
+    @Autowired
+    private LocalCacheMemoryArbiter localCacheMemoryArbiter;
+    @Autowired
+    private LocalCacheMemoryPressureMonitor localCacheMemoryPressureMonitor;
 
     /**
      * 方法缓存容量限制的定时清理
+     * 配置了内存限制的缓存已由caffeine按权重（LocalCacheByteWeigher）写入时淘汰，这里只做兜底
      */
     @Scheduled(fixedDelay = 60 * 1000)
     public void cleanMethodCacheForMemoryLimit() {
         LocalCacheLogger.debug(null, "本地缓存 方法缓存-内存回收 执行开始");
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
-        Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = LocalCacheAspect.cacheMap;
-        cacheMap.keySet().forEach(this::cleanMethodCacheForMemoryLimit);
+        ForkJoinPool cleanPool = LocalCacheExecutors.cleanup();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(LocalCacheAspect.cacheMap.size());
+        for (String methodKey : LocalCacheAspect.cacheMap.keySet()) {
+            tasks.add(cleanPool.submit(() -> cleanMethodCacheForMemoryLimit(methodKey)));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
         stopWatch.stop();
-        LocalCacheLogger.debug(null, "本地缓存 方法缓存-内存回收 执行结束 耗时 {} ms", stopWatch.getLastTaskTimeMillis());
+        LocalCacheLogger.debug(null, "本地缓存 方法缓存-内存回收 执行结束 缓存 {} 个 耗时 {} ms", tasks.size(), stopWatch.getLastTaskTimeMillis());
+    }
+
+    /**
+     * 异步清理单个缓存的内存，已有清理在执行时不再提交
+     *
+     * @param methodKey
+     */
+    public void cleanMethodCacheForMemoryLimitAsync(String methodKey) {
+        MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(methodKey);
+        if (plan != null && !plan.getCleaning().get()) {
+            LocalCacheExecutors.cleanup().execute(() -> cleanMethodCacheForMemoryLimit(methodKey));
+        }
     }
 
     /**
@@ -98,82 +83,85 @@ public class LocalCacheCleanerJob {
      * @param methodKey
      */
     public void cleanMethodCacheForMemoryLimit(String methodKey) {
-        cleanLock.lock();
+        MethodCachePlan plan = LocalCacheContext.getMethodCachePlan(methodKey);
+        if (plan == null || !plan.tryStartCleaning()) {
+            return;
+        }
         try {
             long oneCacheUsedMemoryMaxSize = config.getOneCacheUsedMemoryMaxSizeByte() != null && config.getOneCacheUsedMemoryMaxSizeByte() >= 0 ? config.getOneCacheUsedMemoryMaxSizeByte() : 0;
-            Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = LocalCacheAspect.cacheMap;
-            Cache<LocalCacheKey, LocalCacheValue> cache = cacheMap.get(methodKey);
-            ConcurrentMap<@NonNull LocalCacheKey, @NonNull LocalCacheValue> map = cache.asMap();
-            if (MapUtil.isNotEmpty(map)) {
-                LocalCacheKey localCacheKey = map.keySet().stream().findFirst().orElse(null);
-                if (localCacheKey == null) {
-                    LocalCacheLogger.error(null, "清理失败，获取到的key为空");
-                    return;
-                }
-                LocalCache localCache = localCacheKey.getLocalCache();
-                long usedMemoryMaxSizeByte = localCacheSizeUtil.parseSizeStr(localCache.usedMemoryMaxSize());
-                long usedMemoryMaxSize = usedMemoryMaxSizeByte >= 0 ? usedMemoryMaxSizeByte : 0;
-                // 判定是否要执行清理
-                // 都是无限制，无需清理
-                if (Math.max(oneCacheUsedMemoryMaxSize, usedMemoryMaxSize) == 0) {
-                    return;
-                }
-                // 配置取小
-                long limit = usedMemoryMaxSize > 0 ? (oneCacheUsedMemoryMaxSize > 0 ? Math.min(usedMemoryMaxSize, oneCacheUsedMemoryMaxSize) : usedMemoryMaxSize) : oneCacheUsedMemoryMaxSize;
-
-                long cacheByteSize = localCacheSizeUtil.getMethodCacheByteSize(LocalCacheContext.getCacheName(cache));
-                long expectCleanSize = cacheByteSize - limit;
-                if (expectCleanSize > 0) {
-                    // 需要清理
-                    CleanStrategyEnum cleanStrategyEnum = localCache.cleanStrategy() != null ? localCache.cleanStrategy() : (StrUtil.isNotBlank(config.getCleanStrategy()) ? CleanStrategyEnum.of(config.getCleanStrategy()) : null);
-                    ILocalCacheCleaner cleaner = LocalCacheCleanerFactory.getCleaner(cleanStrategyEnum);
-                    long cleaned = cleaner.clean(cache, cacheByteSize, expectCleanSize);
-                    LocalCacheLogger.info(null, "本地缓存执行清理（cleanMethodCacheForMemoryLimit） 清理缓存：{}  清理了{} ", methodKey, DataSizeUtil.format(cleaned));
-                } else {
-                    LocalCacheLogger.debug(null, "本地缓存执行清理（cleanMethodCacheForMemoryLimit） 缓存：{} 无需清理，当前内存占用 {} ，限制大小为 {}", localCacheKey.getMethodKey(), DataSizeUtil.format(cacheByteSize), DataSizeUtil.format(limit));
-                }
+            LocalCache localCache = plan.getLocalCache();
+            // 配置取小
+            long limit = LocalCacheByteWeigher.usedMemoryMaxSizeByte(localCache, oneCacheUsedMemoryMaxSize);
+            // 判定是否要执行清理
+            // 都是无限制，无需清理
+            if (limit == 0) {
+                return;
+            }
+            Cache<LocalCacheKey, LocalCacheValue> cache = plan.getCache();
+            long cacheByteSize = currentByteSize(methodKey, cache);
+            long expectCleanSize = cacheByteSize - limit;
+            if (expectCleanSize > 0) {
+                // 需要清理
+                CleanStrategyEnum cleanStrategyEnum = CleanStrategyEnum.resolve(localCache.cleanStrategy(), config.getCleanStrategy());
+                ILocalCacheCleaner cleaner = LocalCacheCleanerFactory.getCleaner(cleanStrategyEnum);
+                long cleaned = cleaner.clean(cache, cacheByteSize, expectCleanSize);
+                LocalCacheLogger.info(null, "本地缓存执行清理（cleanMethodCacheForMemoryLimit） 清理缓存：{}  清理了{} ", methodKey, DataSizeUtil.format(cleaned));
+            } else {
+                LocalCacheLogger.debug(null, "本地缓存执行清理（cleanMethodCacheForMemoryLimit） 缓存：{} 无需清理，当前内存占用 {} ，限制大小为 {}", methodKey, DataSizeUtil.format(cacheByteSize), DataSizeUtil.format(limit));
             }
-
         } catch (Exception e) {
             log.error("清理本地缓存报错(cleanMethodCacheForMemoryLimit)", e);
         } finally {
-            cleanLock.unlock();
+            plan.finishCleaning();
         }
     }
 
 
+    /**
+     * 缓存当前的内存占用
+     * 增量计数在移除监听器里异步扣减，caffeine按权重刚淘汰完时会偏大，按权重限制的缓存先执行完待处理的淘汰，再和caffeine的权重总和取小，避免多清理
+     *
+     * @param methodKey
+     * @param cache
+     * @return
+     */
+    private long currentByteSize(String methodKey, Cache<LocalCacheKey, LocalCacheValue> cache) {
+        long cacheByteSize = localCacheSizeUtil.getMethodCacheByteSize(methodKey);
+        Optional<Policy.Eviction<LocalCacheKey, LocalCacheValue>> eviction = cache.policy().eviction();
+        if (eviction.isPresent() && eviction.get().isWeighted()) {
+            cache.cleanUp();
+            OptionalLong weightedSize = eviction.get().weightedSize();
+            if (weightedSize.isPresent()) {
+                return Math.min(cacheByteSize, weightedSize.getAsLong());
+            }
+        }
+        return cacheByteSize;
+    }
+
     /**
      * 方法缓存容量限制的定时清理
      */
     @Scheduled(fixedDelay = 60 * 1000, initialDelay = 10)
     public void cleanAllMethodCacheForMemoryLimit() {
         long allMethodCacheUsedMemoryMaxSize = config.getAllMethodCacheUsedMemoryMaxSizeByte() != null && config.getAllMethodCacheUsedMemoryMaxSizeByte() > 0 ? config.getAllMethodCacheUsedMemoryMaxSizeByte() : 0;
+        // 堆内存压力下的临时上限
+        allMethodCacheUsedMemoryMaxSize = localCacheMemoryPressureMonitor.effectiveGlobalLimit(allMethodCacheUsedMemoryMaxSize);
         if (allMethodCacheUsedMemoryMaxSize > 0) {
-            cleanLock.lock();
             try {
                 LocalCacheLogger.debug(null, "本地缓存 方法缓存-全局内存占用限制回收内存 执行开始");
                 StopWatch stopWatch = new StopWatch();
                 stopWatch.start();
-                Map<String, Cache<LocalCacheKey, LocalCacheValue>> cacheMap = LocalCacheAspect.cacheMap;
-                if (MapUtil.isNotEmpty(cacheMap)) {
-                    long cacheMapByteSize = cacheMap.keySet().stream().mapToLong(cacheName -> localCacheSizeUtil.getMethodCacheByteSize(cacheName)).sum();
-                    long expectCleanSize = cacheMapByteSize - allMethodCacheUsedMemoryMaxSize;
-                    if (expectCleanSize > 0) {
-                        CleanStrategyEnum cleanStrategy = CleanStrategyEnum.of(config.getCleanStrategy());
-                        ILocalCacheCleaner cleaner = LocalCacheCleanerFactory.getCleaner(cleanStrategy);
-                        long cleaned = cleaner.clean(cacheMap, cacheMapByteSize, expectCleanSize);
-                        // 把容量大小的缓存给清理掉，避免重复清理
-                        LocalCacheContext.cleanMethodCache(LocalCacheSizeUtil.CACHE_SIZE_CACHE_NAME);
-                        LocalCacheLogger.info(null, "本地缓存执行清理（cleanAllMethodCacheForMemoryLimit）清理了{} ", DataSizeUtil.format(cleaned));
-                    }
+                long cacheMapByteSize = LocalCacheSizeUtil.getAllMethodCacheByteSize();
+                long expectCleanSize = cacheMapByteSize - allMethodCacheUsedMemoryMaxSize;
+                if (expectCleanSize > 0) {
+                    // 按公平份额、优先级回收，仲裁器自己保证同时只有一个全局回收
+                    long cleaned = localCacheMemoryArbiter.reclaim(expectCleanSize);
+                    LocalCacheLogger.info(null, "本地缓存执行清理（cleanAllMethodCacheForMemoryLimit）清理了{} ", DataSizeUtil.format(cleaned));
                 }
                 stopWatch.stop();
                 LocalCacheLogger.debug(null, "本地缓存 方法缓存-全局内存占用限制回收内存 执行结束, 耗时 {} ms", stopWatch.getLastTaskTimeMillis());
-
             } catch (Exception e) {
-                log.error("清理本地缓存报错(cleanMethodCacheForMemoryLimit)", e);
-            } finally {
-                cleanLock.unlock();
+                log.error("清理本地缓存报错(cleanAllMethodCacheForMemoryLimit)", e);
             }
         }
     }
@@ -0,0 +1,31 @@
+package cn.humorchen.localcache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/23
+ * description: 虚拟线程支持
+ * 这是JDK21的版本，打包到多版本jar的 META-INF/versions/21 下，JDK21及以上运行时替换 src/main/java 下的JDK8版本
+ **/
+public class LocalCacheVirtualThreads {
+    /**
+     * 当前运行环境是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器
+     *
+     * @param namePrefix 线程名前缀，后面拼序号
+     * @return
+     */
+    public static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
@@ -0,0 +1,43 @@
+package cn.humorchen.localcache.service;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/25
+ * description: 过期旧值（stale-while-revalidate、stale-if-error）测试服务
+ **/
+public interface IStaleTestService {
+    /**
+     * 过期后返回旧值并异步刷新
+     * @param id
+     * @return id-第几次加载
+     */
+    String revalidate(String id);
+
+    /**
+     * 过期后加载报错时返回旧值
+     * @param id
+     * @return id-第几次加载
+     */
+    String staleIfError(String id);
+
+    /**
+     * 被代理方法执行的次数
+     * @param id
+     * @return
+     */
+    int getLoadCount(String id);
+
+    /**
+     * 设置之后的加载是否报错
+     * @param failing
+     */
+    void setFailing(boolean failing);
+
+    /**
+     * 设置之后的加载在执行前等待，为空不等待
+     * @param block
+     */
+    void setBlock(CountDownLatch block);
+}
@@ -0,0 +1,70 @@
+package cn.humorchen.localcache.service.impl;
+
+import cn.humorchen.localcache.LocalCache;
+import cn.humorchen.localcache.service.IStaleTestService;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/25
+ * description: 过期旧值测试服务，写入200毫秒后过期
+ **/
+@Service
+public class StaleTestServiceImpl implements IStaleTestService {
+    /**
+     * 每个id的加载次数
+     */
+    private final Map<String, AtomicInteger> loadCountMap = new ConcurrentHashMap<>();
+    private volatile boolean failing;
+    private volatile CountDownLatch block;
+
+    @Override
+    @LocalCache(cacheName = "stale-revalidate", expireAfterWrite = 200, staleWhileRevalidateFor = 5000, timeUnit = TimeUnit.MILLISECONDS)
+    public String revalidate(String id) {
+        return load(id);
+    }
+
+    @Override
+    @LocalCache(cacheName = "stale-if-error", expireAfterWrite = 200, staleIfErrorFor = 1000, timeUnit = TimeUnit.MILLISECONDS)
+    public String staleIfError(String id) {
+        return load(id);
+    }
+
+    @Override
+    public int getLoadCount(String id) {
+        AtomicInteger count = loadCountMap.get(id);
+        return count != null ? count.get() : 0;
+    }
+
+    @Override
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    @Override
+    public void setBlock(CountDownLatch block) {
+        this.block = block;
+    }
+
+    private String load(String id) {
+        int count = loadCountMap.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+        CountDownLatch latch = block;
+        if (latch != null) {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failing) {
+            throw new IllegalStateException("load failed: " + id);
+        }
+        return id + "-" + count;
+    }
+}
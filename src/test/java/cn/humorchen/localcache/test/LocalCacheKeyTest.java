@@ -0,0 +1,80 @@
+package cn.humorchen.localcache.test;
+
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.interfaces.ILocalCacheEquals;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/25
+ * description: 方法缓存key判定测试
+ * 方法参数本身实现ILocalCacheEquals时由接口判定，嵌套的按内容判定
+ **/
+public class LocalCacheKeyTest {
+    /**
+     * 按id判定是否相同的参数
+     */
+    public static class Query implements ILocalCacheEquals {
+        private final int id;
+        private final String traceId;
+
+        public Query(int id, String traceId) {
+            this.id = id;
+            this.traceId = traceId;
+        }
+
+        @Override
+        public boolean equals(ILocalCacheEquals o) {
+            return o instanceof Query && ((Query) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    /**
+     * 字段里有Query的普通对象
+     */
+    public static class Wrapper {
+        private final Query query;
+
+        public Wrapper(Query query) {
+            this.query = query;
+        }
+    }
+
+    /**
+     * 方法参数本身由接口判定：判定相同的忽略其他字段，判定不同的key和hashCode都不同
+     */
+    @Test
+    public void topLevelArgUsesInterface() {
+        Assertions.assertEquals(key(new Query(1, "a")), key(new Query(1, "b")));
+        Assertions.assertEquals(key(new Query(1, "a")).hashCode(), key(new Query(1, "b")).hashCode());
+        Assertions.assertNotEquals(key(new Query(1, "a")), key(new Query(2, "a")));
+        Assertions.assertNotEquals(key(new Query(1, "a")).hashCode(), key(new Query(2, "a")).hashCode());
+    }
+
+    /**
+     * 嵌套在集合、Map、Optional、对象字段里的按内容判定
+     */
+    @Test
+    public void nestedArgUsesContent() {
+        Assertions.assertNotEquals(key(Arrays.asList(new Query(1, "a"))), key(Arrays.asList(new Query(2, "a"))));
+        Assertions.assertNotEquals(key(Collections.singletonMap("q", new Query(1, "a"))), key(Collections.singletonMap("q", new Query(2, "a"))));
+        Assertions.assertNotEquals(key(Optional.of(new Query(1, "a"))), key(Optional.of(new Query(2, "a"))));
+        Assertions.assertNotEquals(key(new Wrapper(new Query(1, "a"))), key(new Wrapper(new Query(2, "a"))));
+        Assertions.assertEquals(key(Arrays.asList(new Query(1, "a"))), key(Arrays.asList(new Query(1, "a"))));
+        Assertions.assertEquals(key(new Wrapper(new Query(1, "a"))), key(new Wrapper(new Query(1, "a"))));
+    }
+
+    private static LocalCacheKey key(Object arg) {
+        return new LocalCacheKey("LocalCacheKeyTest", null, null, null, new Object[]{arg});
+    }
+}
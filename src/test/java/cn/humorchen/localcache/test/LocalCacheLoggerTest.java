@@ -0,0 +1,74 @@
+package cn.humorchen.localcache.test;
+
+import ch.qos.logback.classic.Level;
+import cn.humorchen.localcache.LocalCacheLogger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/8
+ * description: 日志测试
+ **/
+public class LocalCacheLoggerTest {
+
+    /**
+     * 测试占位符替换
+     */
+    @Test
+    public void testLog2String() {
+        Assertions.assertEquals("a 1 b null c", LocalCacheLogger.log2String("a {} b {} c", 1, null));
+        Assertions.assertEquals("{} x", LocalCacheLogger.log2String("{} {}", (Supplier<String>) () -> "{}", "x"));
+        Assertions.assertEquals("[1,2] {}", LocalCacheLogger.log2String("{} {}", Arrays.asList(1, 2)));
+        Assertions.assertEquals("no args", LocalCacheLogger.log2String("no args"));
+    }
+
+    /**
+     * 测试日志级别关闭时不拼装日志：参数的Supplier不取值、参数对象不序列化
+     */
+    @Test
+    public void testNoFormattingWhenDebugOff() {
+        ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(LocalCacheLogger.class);
+        Level level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            AtomicInteger invoked = new AtomicInteger();
+            Supplier<String> supplier = () -> {
+                invoked.incrementAndGet();
+                return "value";
+            };
+            TrackedArg arg = new TrackedArg(invoked);
+            Assertions.assertFalse(LocalCacheLogger.isDebugEnabled(null));
+            for (int i = 0; i < 1000; i++) {
+                LocalCacheLogger.debug(null, "本地缓存：{} 参数：{} 处理完毕", supplier, arg);
+            }
+            Assertions.assertEquals(0, invoked.get(), "日志关闭时不应拼装日志参数");
+            // 同样的参数拼装时会取值，保证上面的断言有意义
+            LocalCacheLogger.log2String("{} {}", supplier, arg);
+            Assertions.assertEquals(2, invoked.get());
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    /**
+     * 序列化时计数的参数
+     */
+    public static class TrackedArg {
+        private final AtomicInteger invoked;
+
+        TrackedArg(AtomicInteger invoked) {
+            this.invoked = invoked;
+        }
+
+        public String getValue() {
+            invoked.incrementAndGet();
+            return "tracked";
+        }
+    }
+}
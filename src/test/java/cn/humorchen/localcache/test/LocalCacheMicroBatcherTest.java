@@ -0,0 +1,168 @@
+package cn.humorchen.localcache.test;
+
+import cn.humorchen.localcache.LocalCache;
+import cn.humorchen.localcache.LocalCacheMicroBatcher;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.MethodCachePlan;
+import cn.humorchen.localcache.interfaces.Impl.Murmur3KeyEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/25
+ * description: 合并批量加载测试
+ * 时间窗口到了合并加载、攒够一批立即加载、等待超时自行加载、批量方法报错分发给每个等待方
+ **/
+public class LocalCacheMicroBatcherTest {
+    /**
+     * 被缓存的服务，批量方法参数为Set
+     */
+    public static class UserService {
+        private final List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch block;
+        private volatile RuntimeException error;
+
+        @LocalCache(batchLoader = "getUsers", batchWindowMillis = 500)
+        public String windowUser(Integer id) {
+            return "single-" + id;
+        }
+
+        @LocalCache(batchLoader = "getUsers", batchWindowMillis = 60_000, batchMaxSize = 2)
+        public String sizeUser(Integer id) {
+            return "single-" + id;
+        }
+
+        @LocalCache(batchLoader = "getUsers", batchWindowMillis = 1, singleFlightWaitMillis = 100)
+        public String slowUser(Integer id) {
+            return "single-" + id;
+        }
+
+        public Map<Integer, String> getUsers(Set<Integer> ids) throws InterruptedException {
+            batches.add(new LinkedHashSet<>(ids));
+            CountDownLatch latch = block;
+            if (latch != null) {
+                latch.await(10, TimeUnit.SECONDS);
+            }
+            if (error != null) {
+                throw error;
+            }
+            Map<Integer, String> map = new HashMap<>();
+            for (Integer id : ids) {
+                map.put(id, "batch-" + id);
+            }
+            return map;
+        }
+    }
+
+    private final UserService service = new UserService();
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void shutdown() {
+        if (service.block != null) {
+            service.block.countDown();
+        }
+        callers.shutdownNow();
+    }
+
+    /**
+     * 时间窗口内的未命中合并成一次批量调用，参数按批量方法声明传Set
+     */
+    @Test
+    public void flushOnWindow() throws Exception {
+        MethodCachePlan plan = plan("windowUser");
+        List<Future<Object>> results = loadAll(plan, 1, 2, 3);
+
+        Assertions.assertEquals(Arrays.asList("batch-1", "batch-2", "batch-3"), get(results));
+        Assertions.assertEquals(1, service.batches.size());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), service.batches.get(0));
+        Assertions.assertEquals(3.0, plan.getMicroBatcher().getAvgBatchSize());
+    }
+
+    /**
+     * 攒够batchMaxSize个立即加载，不等时间窗口
+     */
+    @Test
+    public void flushOnMaxSize() throws Exception {
+        MethodCachePlan plan = plan("sizeUser");
+        List<Future<Object>> results = loadAll(plan, 1, 2);
+
+        Assertions.assertEquals(Arrays.asList("batch-1", "batch-2"), get(results));
+        Assertions.assertEquals(1, service.batches.size());
+    }
+
+    /**
+     * 批量加载超过等待时间，调用方自行执行单个id的方法
+     */
+    @Test
+    public void fallbackOnTimeout() throws Throwable {
+        service.block = new CountDownLatch(1);
+        MethodCachePlan plan = plan("slowUser");
+
+        Assertions.assertEquals("single-1", plan.getMicroBatcher().load(key(plan, 1)));
+        Assertions.assertEquals(1, service.batches.size());
+    }
+
+    /**
+     * 批量方法的异常原样抛给这一批的每个调用方
+     */
+    @Test
+    public void fanOutError() throws Exception {
+        service.error = new IllegalStateException("batch failed");
+        MethodCachePlan plan = plan("windowUser");
+        List<Future<Object>> results = loadAll(plan, 1, 2, 3);
+
+        for (Future<Object> result : results) {
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            Assertions.assertSame(service.error, e.getCause());
+        }
+        Assertions.assertEquals(1, service.batches.size());
+    }
+
+    private MethodCachePlan plan(String methodName) throws NoSuchMethodException {
+        Method method = UserService.class.getMethod(methodName, Integer.class);
+        return new MethodCachePlan(method, method.getAnnotation(LocalCache.class), "LocalCacheMicroBatcherTest#" + methodName, 0,
+                null, null, Murmur3KeyEncoder.INSTANCE, 0, 0, false);
+    }
+
+    private LocalCacheKey key(MethodCachePlan plan, int id) {
+        return new LocalCacheKey(plan, service, new Object[]{id});
+    }
+
+    /**
+     * 多个调用方同时加载
+     */
+    private List<Future<Object>> loadAll(MethodCachePlan plan, int... ids) {
+        LocalCacheMicroBatcher batcher = plan.getMicroBatcher();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int id : ids) {
+            results.add(callers.submit(() -> {
+                start.await();
+                try {
+                    return batcher.load(key(plan, id));
+                } catch (Exception e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    private static List<Object> get(List<Future<Object>> results) throws Exception {
+        List<Object> values = new ArrayList<>();
+        for (Future<Object> result : results) {
+            values.add(result.get(10, TimeUnit.SECONDS));
+        }
+        return values;
+    }
+}
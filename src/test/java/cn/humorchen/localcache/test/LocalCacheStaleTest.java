@@ -0,0 +1,118 @@
+package cn.humorchen.localcache.test;
+
+import cn.humorchen.localcache.LocalCacheExecutors;
+import cn.humorchen.localcache.LocalCacheTestApplication;
+import cn.humorchen.localcache.service.IStaleTestService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/25
+ * description: 过期旧值测试
+ * stale-while-revalidate 窗口内返回旧值且同一个key只异步刷新一次，刷新被线程池或舱壁拒绝时继续返回旧值，之后还能再次刷新
+ * stale-if-error 窗口内加载报错返回旧值，窗口外原样抛出
+ **/
+@SpringBootTest(classes = LocalCacheTestApplication.class)
+public class LocalCacheStaleTest {
+    /**
+     * 测试服务方法的缓存名，也是刷新舱壁的名字
+     */
+    private static final String REVALIDATE_CACHE_NAME = "stale-revalidate";
+
+    @Autowired
+    private IStaleTestService staleService;
+
+    @AfterEach
+    public void reset() {
+        staleService.setFailing(false);
+        staleService.setBlock(null);
+    }
+
+    /**
+     * 过期后返回旧值，刷新完成前多次访问只有一次后台加载
+     */
+    @Test
+    public void revalidateOncePerKey() throws Exception {
+        Assertions.assertEquals("a-1", staleService.revalidate("a"));
+        Thread.sleep(300);
+        CountDownLatch block = new CountDownLatch(1);
+        staleService.setBlock(block);
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals("a-1", staleService.revalidate("a"), "刷新完成前应返回旧值");
+        }
+        waitUntil(() -> staleService.getLoadCount("a") == 2);
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals("a-1", staleService.revalidate("a"));
+        }
+        Assertions.assertEquals(2, staleService.getLoadCount("a"), "同一个key同时只刷新一次");
+
+        staleService.setBlock(null);
+        block.countDown();
+        waitUntil(() -> "a-2".equals(staleService.revalidate("a")));
+        Assertions.assertEquals(2, staleService.getLoadCount("a"));
+    }
+
+    /**
+     * 舱壁满了放弃刷新：返回旧值不加载，放弃后不残留加载中的key，舱壁空出后再次访问会刷新
+     */
+    @Test
+    public void revalidateRejected() throws Exception {
+        Assertions.assertEquals("c-1", staleService.revalidate("c"));
+        Thread.sleep(300);
+        CountDownLatch hold = new CountDownLatch(1);
+        try {
+            int held = 0;
+            while (held < 10_000 && LocalCacheExecutors.tryExecuteRefresh(REVALIDATE_CACHE_NAME, LocalCacheExecutors.defaultRefreshBulkhead(), () -> await(hold))) {
+                held++;
+            }
+            Assertions.assertEquals("c-1", staleService.revalidate("c"));
+            Assertions.assertEquals("c-1", staleService.revalidate("c"));
+            Assertions.assertEquals(1, staleService.getLoadCount("c"), "刷新被拒绝时不加载");
+        } finally {
+            hold.countDown();
+        }
+        waitUntil(() -> "c-2".equals(staleService.revalidate("c")));
+        Assertions.assertEquals(2, staleService.getLoadCount("c"));
+    }
+
+    /**
+     * stale-if-error 窗口内加载报错返回旧值，窗口外抛出加载的异常
+     */
+    @Test
+    public void staleIfError() throws Exception {
+        Assertions.assertEquals("b-1", staleService.staleIfError("b"));
+        Thread.sleep(400);
+        staleService.setFailing(true);
+
+        Assertions.assertEquals("b-1", staleService.staleIfError("b"), "窗口内报错应返回旧值");
+        Assertions.assertEquals(2, staleService.getLoadCount("b"));
+
+        Thread.sleep(1100);
+        Assertions.assertThrows(IllegalStateException.class, () -> staleService.staleIfError("b"), "窗口外应抛出异常");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cn.humorchen.localcache.test;
+
+import cn.humorchen.localcache.LocalCacheSizeUtil;
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.cleaner.impl.LruCleaner;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/15
+ * description: LRU清理测试
+ * 按caffeine淘汰顺序只淘汰最冷的值：淘汰的条数、淘汰了哪些值都是确定的，不比较耗时
+ **/
+public class LruCleanerTest {
+    /**
+     * 缓存条数
+     */
+    private static final int SIZE = 10_000;
+    /**
+     * 每轮淘汰的条数
+     */
+    private static final int CLEAN_COUNT = 20;
+
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * 淘汰的正好是淘汰顺序最前的CLEAN_COUNT个值
+     */
+    @Test
+    public void cleanColdestInEvictionOrder() {
+        Cache<LocalCacheKey, LocalCacheValue> cache = newCache(false);
+        long entryByteSize = LocalCacheSizeUtil.getEntryByteSize(cache.asMap().values().iterator().next());
+        List<LocalCacheKey> expected = new ArrayList<>(cache.policy().eviction().get().coldest(CLEAN_COUNT).keySet());
+
+        long cleaned = new LruCleaner().clean(cache, entryByteSize * SIZE, entryByteSize * CLEAN_COUNT);
+
+        cache.cleanUp();
+        Assertions.assertEquals(entryByteSize * CLEAN_COUNT, cleaned);
+        Assertions.assertEquals(SIZE - CLEAN_COUNT, cache.estimatedSize());
+        for (LocalCacheKey key : expected) {
+            Assertions.assertNull(cache.getIfPresent(key), "应淘汰最冷的值");
+        }
+    }
+
+    /**
+     * 负缓存不参与清理，跳过后继续按淘汰顺序取
+     */
+    @Test
+    public void skipNegativeValues() {
+        Cache<LocalCacheKey, LocalCacheValue> cache = newCache(true);
+        LocalCacheValue sample = cache.asMap().values().stream().filter(v -> !v.isNegative()).findFirst().orElseThrow(IllegalStateException::new);
+        long entryByteSize = LocalCacheSizeUtil.getEntryByteSize(sample);
+        List<LocalCacheKey> expected = new ArrayList<>();
+        List<LocalCacheKey> negatives = new ArrayList<>();
+        for (Map.Entry<LocalCacheKey, LocalCacheValue> entry : cache.policy().eviction().get().coldest(CLEAN_COUNT * 4).entrySet()) {
+            if (entry.getValue().isNegative()) {
+                negatives.add(entry.getKey());
+            } else if (expected.size() < CLEAN_COUNT) {
+                expected.add(entry.getKey());
+            }
+        }
+        Assertions.assertFalse(negatives.isEmpty());
+
+        long cleaned = new LruCleaner().clean(cache, entryByteSize * SIZE, entryByteSize * CLEAN_COUNT);
+
+        cache.cleanUp();
+        Assertions.assertEquals(entryByteSize * CLEAN_COUNT, cleaned);
+        for (LocalCacheKey key : expected) {
+            Assertions.assertNull(cache.getIfPresent(key), "应淘汰最冷的值");
+        }
+        for (LocalCacheKey key : negatives) {
+            Assertions.assertNotNull(cache.getIfPresent(key), "负缓存不应被清理");
+        }
+    }
+
+    /**
+     * 同步维护的有容量限制的缓存，withNegative 时每3个值有一个负缓存
+     *
+     * @param withNegative
+     * @return
+     */
+    private Cache<LocalCacheKey, LocalCacheValue> newCache(boolean withNegative) {
+        Cache<LocalCacheKey, LocalCacheValue> cache = Caffeine.newBuilder().maximumSize(SIZE * 2L).executor(Runnable::run).build();
+        for (int i = 0; i < SIZE; i++) {
+            LocalCacheKey key = new LocalCacheKey("LruCleanerTest", null, null, null, new Object[]{i});
+            cache.put(key, new LocalCacheValue(key, withNegative && i % 3 == 0 ? null : i, referenceQueue));
+        }
+        cache.cleanUp();
+        return cache;
+    }
+}
@@ -0,0 +1,158 @@
+package cn.humorchen.localcache.test;
+
+import cn.humorchen.localcache.bean.LocalCacheKey;
+import cn.humorchen.localcache.bean.LocalCacheValue;
+import cn.humorchen.localcache.cleaner.ILocalCacheCleaner;
+import cn.humorchen.localcache.cleaner.impl.RandomCleaner;
+import cn.humorchen.localcache.cleaner.impl.SampledLfuCleaner;
+import cn.humorchen.localcache.cleaner.impl.SampledLruCleaner;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author  humorchen
+ * date: 2024/3/17
+ * description: 抽样淘汰命中率对比
+ * 在zipf分布（热点倾斜）的访问序列上，对比抽样LRU、抽样LFU与精确LRU、随机淘汰的命中率
+ **/
+public class SampledCleanerHitRatioTest {
+    /**
+     * 缓存容量（个数）
+     */
+    private static final int CAPACITY = 1000;
+    /**
+     * key的总数
+     */
+    private static final int KEY_COUNT = 20000;
+    /**
+     * 访问次数
+     */
+    private static final int REQUEST_COUNT = 300000;
+
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+
+    @Test
+    public void hitRatioOnSkewedTrace() {
+        int[] trace = zipfTrace(0.9, 1);
+        double lru = exactLruHitRatio(trace);
+        double sampledLru = hitRatio(trace, new SampledLruCleaner());
+        double sampledLfu = hitRatio(trace, new SampledLfuCleaner());
+        double random = hitRatio(trace, new RandomCleaner());
+        System.out.println(String.format("zipf命中率 精确LRU %.4f，抽样LRU %.4f，抽样LFU %.4f，随机 %.4f", lru, sampledLru, sampledLfu, random));
+        // 抽样LRU接近精确LRU
+        Assertions.assertEquals(lru, sampledLru, 0.03);
+        // 热点稳定时LFU不差于LRU
+        Assertions.assertTrue(sampledLfu >= lru - 0.01);
+        Assertions.assertTrue(sampledLru > random);
+    }
+
+    @Test
+    public void hitRatioOnShiftingHotspot() {
+        // 访问过半后热点整体平移，检查抽样LFU的访问次数衰减前旧热点不会长期占住缓存导致命中率崩溃
+        int[] trace = zipfTrace(0.9, 2);
+        double lru = exactLruHitRatio(trace);
+        double sampledLru = hitRatio(trace, new SampledLruCleaner());
+        double sampledLfu = hitRatio(trace, new SampledLfuCleaner());
+        System.out.println(String.format("热点平移zipf命中率 精确LRU %.4f，抽样LRU %.4f，抽样LFU %.4f", lru, sampledLru, sampledLfu));
+        Assertions.assertEquals(lru, sampledLru, 0.03);
+        Assertions.assertTrue(sampledLfu >= lru - 0.05);
+    }
+
+    /**
+     * 用清理器淘汰的缓存命中率：未命中时写入，超出容量时清理一次
+     *
+     * @param trace
+     * @param cleaner
+     * @return
+     */
+    private double hitRatio(int[] trace, ILocalCacheCleaner cleaner) {
+        Cache<LocalCacheKey, LocalCacheValue> cache = Caffeine.newBuilder().build();
+        LocalCacheKey[] keys = new LocalCacheKey[KEY_COUNT];
+        int hit = 0;
+        for (int id : trace) {
+            LocalCacheKey key = keys[id];
+            if (key == null) {
+                key = new LocalCacheKey("SampledCleanerHitRatio", null, null, null, new Object[]{id});
+                keys[id] = key;
+            }
+            LocalCacheValue localCacheValue = cache.getIfPresent(key);
+            if (localCacheValue != null) {
+                localCacheValue.getValue();
+                hit++;
+                continue;
+            }
+            cache.put(key, new LocalCacheValue(key, id, referenceQueue));
+            if (cache.estimatedSize() > CAPACITY) {
+                cleaner.cleanOnce(cache);
+            }
+        }
+        return (double) hit / trace.length;
+    }
+
+    /**
+     * 精确LRU的命中率
+     *
+     * @param trace
+     * @return
+     */
+    private static double exactLruHitRatio(int[] trace) {
+        Map<Integer, Boolean> lru = new LinkedHashMap<Integer, Boolean>(CAPACITY * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+        int hit = 0;
+        for (int id : trace) {
+            if (lru.get(id) != null) {
+                hit++;
+            } else {
+                lru.put(id, Boolean.TRUE);
+            }
+        }
+        return (double) hit / trace.length;
+    }
+
+    /**
+     * zipf分布的访问序列，排名r的key被访问的概率正比于 1/r^s
+     * phases 大于1时每个阶段把热点平移到另一批key上
+     *
+     * @param s
+     * @param phases
+     * @return
+     */
+    private static int[] zipfTrace(double s, int phases) {
+        double[] cdf = new double[KEY_COUNT];
+        double sum = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            sum += 1 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        Random random = new Random(42);
+        int[] trace = new int[REQUEST_COUNT];
+        int phaseLength = REQUEST_COUNT / phases;
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            double u = random.nextDouble() * sum;
+            int low = 0;
+            int high = KEY_COUNT - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cdf[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int offset = (i / phaseLength) * (KEY_COUNT / phases);
+            trace[i] = (low + offset) % KEY_COUNT;
+        }
+        return trace;
+    }
+}